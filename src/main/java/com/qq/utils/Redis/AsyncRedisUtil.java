@@ -0,0 +1,379 @@
+package com.qq.utils.Redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * {@link RedisUtil} 的异步版本，所有方法立即返回 CompletableFuture，不阻塞调用线程
+ * <p>
+ * 项目中没有引入 Lettuce 的异步/响应式 API，这里通过自动合并 pipeline 实现：
+ * <br>
+ * 1) 调用方法时只是把命令放入队列，由后台的分发线程执行；
+ * <br>
+ * 2) 分发线程每次取出队列中所有等待的命令（最多 maxBatchSize 条），通过一次 pipeline 发送，
+ * 执行期间新到达的命令在队列中等待下一次 pipeline，因此并发的 20 次 hget 大约只需要 1~2 次网络往返；
+ * <br>
+ * 3) 队列有上限，积压超过上限时新命令直接失败（RejectedExecutionException），不会无限占用内存。
+ * <p>
+ * 覆盖 RedisUtil 中的单条命令方法；scan/hScan/sScan/lScan 需要在游标期间占用连接，不能放入 pipeline，
+ * 没有提供异步版本。{@link CacheClient} 的查询方法在未命中时需要执行数据库查询和加锁，也不在本类的范围内，
+ * 需要时通过 CompletableFuture.supplyAsync 在业务线程池中调用。
+ * <p>
+ * Future 在分发线程中完成，thenApply 等回调默认也在分发线程中执行，回调中不要执行阻塞操作，
+ * 需要时使用 thenApplyAsync 等方法切换到其他线程池。
+ */
+public class AsyncRedisUtil {
+    private final static Logger log = LoggerFactory.getLogger(AsyncRedisUtil.class);
+
+    private final RedisUtil redisUtil;
+    private final int maxBatchSize;
+    private final BlockingQueue<Pending<?>> queue;
+    private final List<Thread> dispatchers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    /**
+     * 使用默认配置：每次 pipeline 最多 512 条命令，1 个分发线程，最多积压 100000 条命令
+     *
+     * @param redisUtil
+     */
+    public AsyncRedisUtil(RedisUtil redisUtil) {
+        this(redisUtil, 512, 1, 100_000);
+    }
+
+    /**
+     * @param redisUtil
+     * @param maxBatchSize 每次 pipeline 最多发送的命令数
+     * @param threads      分发线程数，每个线程同时只执行一个 pipeline
+     * @param maxPending   最多积压的命令数
+     */
+    public AsyncRedisUtil(RedisUtil redisUtil, int maxBatchSize, int threads, int maxPending) {
+        if (maxBatchSize <= 0 || threads <= 0 || maxPending <= 0) {
+            throw new IllegalArgumentException("maxBatchSize、threads 和 maxPending 必须大于0");
+        }
+        this.redisUtil = redisUtil;
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new LinkedBlockingQueue<>(maxPending);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::dispatch, "redis-async-dispatcher-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            dispatchers.add(thread);
+        }
+    }
+
+    /**
+     * 提交自定义命令，可以使用 {@link RedisBatch} 中的任意方法
+     *
+     * @param command 向 batch 中添加一条命令并返回它的 Response
+     * @param <T>
+     * @return 命令的结果
+     */
+    public <T> CompletableFuture<T> submit(Function<RedisBatch, RedisBatch.Response<T>> command) {
+        Pending<T> pending = new Pending<>(command);
+        if (!running) {
+            pending.future.completeExceptionally(new RejectedExecutionException("AsyncRedisUtil 已关闭"));
+        } else if (!queue.offer(pending)) {
+            pending.future.completeExceptionally(new RejectedExecutionException("等待执行的 Redis 命令过多"));
+        } else if (!running && queue.remove(pending)) {
+            // 放入队列时 shutdown 已经清空过队列，没有线程会再执行它
+            pending.future.completeExceptionally(new RejectedExecutionException("AsyncRedisUtil 已关闭"));
+        }
+        return pending.future;
+    }
+
+    /**
+     * 停止分发线程，队列中未执行的命令直接失败
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        for (Thread thread : dispatchers) {
+            thread.interrupt();
+        }
+        List<Pending<?>> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (Pending<?> pending : rest) {
+            pending.future.completeExceptionally(new RejectedExecutionException("AsyncRedisUtil 已关闭"));
+        }
+    }
+
+    /**
+     * 等待执行的命令数
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    //=============================common============================
+
+    public CompletableFuture<Boolean> expire(String key, long time) {
+        return submit(batch -> batch.expire(key, time));
+    }
+
+    public CompletableFuture<Long> getExpire(String key) {
+        return submit(batch -> batch.getExpire(key));
+    }
+
+    public CompletableFuture<Boolean> hasKey(String key) {
+        return submit(batch -> batch.hasKey(key));
+    }
+
+    public CompletableFuture<Long> del(String... key) {
+        return submit(batch -> batch.del(key));
+    }
+
+    //============================String=============================
+
+    public CompletableFuture<Object> get(String key) {
+        return submit(batch -> batch.get(key));
+    }
+
+    /**
+     * 批量获取，结果与 keys 一一对应，不存在的 key 对应 null
+     *
+     * @param keys 键
+     * @return
+     */
+    public CompletableFuture<List<Object>> mget(List<String> keys) {
+        List<CompletableFuture<Object>> futures = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            futures.add(get(key));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<Object> values = new ArrayList<>(futures.size());
+            for (CompletableFuture<Object> future : futures) {
+                values.add(future.join());
+            }
+            return values;
+        });
+    }
+
+    public CompletableFuture<Boolean> set(String key, Object value) {
+        return submit(batch -> batch.set(key, value));
+    }
+
+    public CompletableFuture<Boolean> set(String key, Object value, long time) {
+        return submit(batch -> batch.set(key, value, time));
+    }
+
+    public CompletableFuture<Long> incr(String key, long delta) {
+        if (delta < 0) {
+            throw new RuntimeException("递增因子必须大于0");
+        }
+        return submit(batch -> batch.incr(key, delta));
+    }
+
+    public CompletableFuture<Long> decr(String key, long delta) {
+        if (delta < 0) {
+            throw new RuntimeException("递减因子必须大于0");
+        }
+        return submit(batch -> batch.incr(key, -delta));
+    }
+
+    //================================Map=================================
+
+    public CompletableFuture<Object> hget(String key, String item) {
+        return submit(batch -> batch.hget(key, item));
+    }
+
+    public CompletableFuture<Map<Object, Object>> hmget(String key) {
+        return submit(batch -> batch.hmget(key));
+    }
+
+    public CompletableFuture<Boolean> hmset(String key, Map<String, Object> map) {
+        return submit(batch -> batch.hmset(key, map));
+    }
+
+    public CompletableFuture<Boolean> hset(String key, String item, Object value) {
+        return submit(batch -> batch.hset(key, item, value));
+    }
+
+    public CompletableFuture<Boolean> hmset(String key, Map<String, Object> map, long time) {
+        return submit(batch -> batch.hmset(key, map, time));
+    }
+
+    public CompletableFuture<Boolean> hset(String key, String item, Object value, long time) {
+        return submit(batch -> batch.hset(key, item, value, time));
+    }
+
+    public CompletableFuture<Boolean> hsetIfAbsent(String key, String item, Object value, long time) {
+        return submit(batch -> batch.hsetIfAbsent(key, item, value, time));
+    }
+
+    public CompletableFuture<Long> hdel(String key, Object... item) {
+        return submit(batch -> batch.hdel(key, item));
+    }
+
+    public CompletableFuture<Boolean> hHasKey(String key, String item) {
+        return submit(batch -> batch.hHasKey(key, item));
+    }
+
+    public CompletableFuture<Double> hincr(String key, String item, double by) {
+        return submit(batch -> batch.hincr(key, item, by));
+    }
+
+    public CompletableFuture<Double> hdecr(String key, String item, double by) {
+        return submit(batch -> batch.hincr(key, item, -by));
+    }
+
+    //============================set=============================
+
+    public CompletableFuture<Set<Object>> sGet(String key) {
+        return submit(batch -> batch.sGet(key));
+    }
+
+    public CompletableFuture<Boolean> sHasKey(String key, Object value) {
+        return submit(batch -> batch.sHasKey(key, value));
+    }
+
+    public CompletableFuture<Long> sSet(String key, Object... values) {
+        return submit(batch -> batch.sSet(key, values));
+    }
+
+    public CompletableFuture<Long> sSetAndTime(String key, long time, Object... values) {
+        return submit(batch -> batch.sSetAndTime(key, time, values));
+    }
+
+    public CompletableFuture<Long> sGetSetSize(String key) {
+        return submit(batch -> batch.sGetSetSize(key));
+    }
+
+    public CompletableFuture<Long> setRemove(String key, Object... values) {
+        return submit(batch -> batch.setRemove(key, values));
+    }
+
+    //===============================list=================================
+
+    public CompletableFuture<List<Object>> lGet(String key, long start, long end) {
+        return submit(batch -> batch.lGet(key, start, end));
+    }
+
+    public CompletableFuture<Object> lGetIndex(String key, long index) {
+        return submit(batch -> batch.lGetIndex(key, index));
+    }
+
+    public CompletableFuture<Long> lSet(String key, Object value) {
+        return submit(batch -> batch.lSet(key, value));
+    }
+
+    public CompletableFuture<Long> lSet(String key, List<Object> value) {
+        return submit(batch -> batch.lSet(key, value));
+    }
+
+    public CompletableFuture<Long> lSet(String key, Object value, long time) {
+        return submit(batch -> batch.lSet(key, value, time));
+    }
+
+    public CompletableFuture<Long> lSet(String key, List<Object> value, long time) {
+        return submit(batch -> batch.lSet(key, value, time));
+    }
+
+    public CompletableFuture<Long> lPushBounded(String key, long maxSize, long time, Object... values) {
+        return submit(batch -> batch.lPushBounded(key, maxSize, time, values));
+    }
+
+    public CompletableFuture<Long> lGetListSize(String key) {
+        return submit(batch -> batch.lGetListSize(key));
+    }
+
+    public CompletableFuture<Boolean> lUpdateIndex(String key, long index, Object value) {
+        return submit(batch -> batch.lUpdateIndex(key, index, value));
+    }
+
+    public CompletableFuture<Long> lRemove(String key, long count, Object value) {
+        return submit(batch -> batch.lRemove(key, count, value));
+    }
+
+    //===============================limit=================================
+
+    public CompletableFuture<Boolean> rateLimit(String key, long limit, long time) {
+        return submit(batch -> batch.rateLimit(key, limit, time));
+    }
+
+    //===============================分发=================================
+
+    private void dispatch() {
+        List<Pending<?>> pendings = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                Pending<?> first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                pendings.add(first);
+                queue.drainTo(pendings, maxBatchSize - 1);
+                flush(pendings);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable e) {
+                log.error("Redis 异步命令分发失败", e);
+            } finally {
+                pendings.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending<?>> pendings) {
+        RedisBatch batch = redisUtil.newBatch();
+        for (Pending<?> pending : pendings) {
+            pending.queue(batch);
+        }
+        try {
+            redisUtil.execute(batch);
+        } catch (Exception e) {
+            // 整个 pipeline 失败，没有任何结果
+            for (Pending<?> pending : pendings) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+        for (Pending<?> pending : pendings) {
+            pending.complete();
+        }
+    }
+
+    private static class Pending<T> {
+        private final Function<RedisBatch, RedisBatch.Response<T>> command;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private RedisBatch.Response<T> response;
+
+        Pending(Function<RedisBatch, RedisBatch.Response<T>> command) {
+            this.command = command;
+        }
+
+        void queue(RedisBatch batch) {
+            try {
+                response = command.apply(batch);
+            } catch (RuntimeException e) {
+                // 序列化失败等，不影响同一批次的其他命令
+                future.completeExceptionally(e);
+            }
+        }
+
+        void complete() {
+            if (response == null) {
+                return;
+            }
+            try {
+                future.complete(response.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.qq.utils.Redis;
+
+import cn.hutool.core.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 布隆过滤器，用于在查询 Redis 和数据库之前拦截一定不存在的 id，解决缓存穿透问题
+ * <p>
+ * 1) 判断时只读取本地的位数组，不访问 Redis，随机 id 攻击在内存中就会被拒绝；
+ * <br>
+ * 2) 位数组同时保存在 Redis 的 bitmap 中，作为各节点的共享数据，节点启动时通过 {@link #load()} 拉取；
+ * <br>
+ * 3) 新增数据时调用 {@link #add}，同时写入 Redis 并通过 pub/sub 通知其他节点更新本地位数组；
+ * <br>
+ * 4) 调用 {@link #load()} 或 {@link #warmUp} 之前本地位数组为空，此时所有 id 都判断为可能存在；
+ * <br>
+ * 5) pub/sub 不保证送达，本地判断不存在时默认再通过 GETBIT 到 Redis 确认，漏掉的通知会在确认时补到本地，
+ * 随机 id 攻击只访问 Redis、不会访问数据库；可以通过 {@link #setConfirmNegatives} 关闭确认，
+ * 此时需要定时调用 {@link #load()} 补上遗漏的通知。
+ * <p>
+ * 布隆过滤器只会误判存在，不会误判不存在，但不支持删除，删除的数据仍依赖缓存空值处理。
+ * 数据量增长超出预期后误判率会升高，需要换一个 redisKey 重新预热。
+ */
+public class CacheBloomFilter implements MessageListener {
+    private final static Logger log = LoggerFactory.getLogger(CacheBloomFilter.class);
+
+    /**
+     * Redis bitmap 最多 2^32 位
+     */
+    private static final long MAX_BITS = 1L << 32;
+    /**
+     * 预热时每批写入的 id 数量
+     */
+    private static final int WARM_UP_BATCH_SIZE = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String redisKey;
+    private final String channel;
+    private final long numBits;
+    private final int numHashes;
+    private final AtomicLongArray bits;
+    // 本地位数组是否已从 Redis 拉取或预热
+    private volatile boolean loaded;
+    private volatile boolean confirmNegatives = true;
+
+    /**
+     * @param stringRedisTemplate
+     * @param redisKey            Redis 中保存位数组的 key
+     * @param expectedInsertions  预计的数据量
+     * @param fpp                 可接受的误判率，例如 0.01
+     */
+    public CacheBloomFilter(StringRedisTemplate stringRedisTemplate, String redisKey, long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("expectedInsertions 必须大于0，fpp 必须在 0~1 之间");
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisKey = redisKey;
+        this.channel = "bloom:" + redisKey;
+        // m = -n * ln(p) / (ln2)^2，k = m / n * ln2
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = Math.min(Math.max(m, 64), MAX_BITS);
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((numBits + 63) >>> 6));
+    }
+
+    /**
+     * 将当前实例注册到监听容器中，接收其他节点新增的 id
+     *
+     * @param container 监听容器，需由调用方负责启动和关闭
+     */
+    public void subscribe(RedisMessageListenerContainer container) {
+        container.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    /**
+     * 本地判断不存在时是否到 Redis 确认，默认开启
+     *
+     * @param confirmNegatives
+     */
+    public void setConfirmNegatives(boolean confirmNegatives) {
+        this.confirmNegatives = confirmNegatives;
+    }
+
+    /**
+     * 本地位数组是否已从 Redis 拉取或预热，未完成前所有 id 都判断为可能存在
+     *
+     * @return
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 判断 id 是否可能存在
+     *
+     * @param id 数据 id
+     * @return false 表示一定不存在
+     */
+    public boolean mightContain(Object id) {
+        if (!loaded) {
+            return true;
+        }
+        long[] offsets = offsets(id);
+        for (long offset : offsets) {
+            if ((bits.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                return confirmNegatives && confirmInRedis(offsets);
+            }
+        }
+        return true;
+    }
+
+    // 到 Redis 确认所有位，全部存在时说明漏掉了通知，补到本地
+    private boolean confirmInRedis(long[] offsets) {
+        byte[] rawKey = stringRedisTemplate.getStringSerializer().serialize(redisKey);
+        List<Object> results;
+        try {
+            results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (long offset : offsets) {
+                    connection.getBit(rawKey, offset);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // Redis 不可用时按可能存在处理，由后续的缓存空值兜底
+            log.warn("布隆过滤器 {} 确认失败", redisKey, e);
+            return true;
+        }
+        for (Object result : results) {
+            if (!Boolean.TRUE.equals(result)) {
+                return false;
+            }
+        }
+        setLocal(offsets);
+        return true;
+    }
+
+    /**
+     * 新增数据时调用，写入本地、Redis，并通知其他节点
+     *
+     * @param id 数据 id
+     */
+    public void add(Object id) {
+        long[] offsets = offsets(id);
+        setLocal(offsets);
+        RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        byte[] rawKey = serializer.serialize(redisKey);
+        byte[] rawChannel = serializer.serialize(channel);
+        byte[] message = serializer.serialize(String.valueOf(id));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.setBit(rawKey, offset, true);
+            }
+            connection.publish(rawChannel, message);
+            return null;
+        });
+    }
+
+    /**
+     * 从数据源批量预热，按批次通过 pipeline 写入 Redis
+     * <p>
+     * 一般在首次上线或重建过滤器时由一个节点执行，其他节点随后调用 {@link #load()} 拉取
+     *
+     * @param ids 全部已存在的 id
+     * @return 预热的 id 数量
+     */
+    public long warmUp(Iterable<?> ids) {
+        byte[] rawKey = stringRedisTemplate.getStringSerializer().serialize(redisKey);
+        long count = 0;
+        List<long[]> batch = new ArrayList<>(WARM_UP_BATCH_SIZE);
+        Iterator<?> iterator = ids.iterator();
+        while (iterator.hasNext()) {
+            long[] offsets = offsets(iterator.next());
+            setLocal(offsets);
+            batch.add(offsets);
+            count++;
+            if (batch.size() >= WARM_UP_BATCH_SIZE || !iterator.hasNext()) {
+                List<long[]> current = batch;
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (long[] item : current) {
+                        for (long offset : item) {
+                            connection.setBit(rawKey, offset, true);
+                        }
+                    }
+                    return null;
+                });
+                batch = new ArrayList<>(WARM_UP_BATCH_SIZE);
+            }
+        }
+        loaded = true;
+        log.info("布隆过滤器 {} 预热完成，数量: {}", redisKey, count);
+        return count;
+    }
+
+    /**
+     * 从 Redis 拉取完整的位数组合并到本地，节点启动时调用，也可以定时调用以补上遗漏的通知
+     */
+    public void load() {
+        byte[] rawKey = stringRedisTemplate.getStringSerializer().serialize(redisKey);
+        byte[] bitmap = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        if (bitmap == null) {
+            // 还没有预热，继续按可能存在处理
+            log.warn("布隆过滤器 {} 在 Redis 中不存在，需要先预热", redisKey);
+            return;
+        }
+        // Redis bitmap 中每个字节的最高位对应最小的 offset
+        long limit = Math.min((long) bitmap.length << 3, numBits);
+        for (long offset = 0; offset < limit; offset++) {
+            if ((bitmap[(int) (offset >>> 3)] & (0x80 >>> (offset & 7))) != 0) {
+                setBit(offset);
+            }
+        }
+        loaded = true;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        setLocal(offsets(new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+
+    private void setLocal(long[] offsets) {
+        for (long offset : offsets) {
+            setBit(offset);
+        }
+    }
+
+    private void setBit(long offset) {
+        int index = (int) (offset >>> 6);
+        long mask = 1L << offset;
+        long old;
+        do {
+            old = bits.get(index);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(index, old, old | mask));
+    }
+
+    // 双重哈希：offset_i = h1 + i * h2，id 统一按字符串计算，保证各节点、各类型的 id 结果一致
+    private long[] offsets(Object id) {
+        long[] hash = HashUtil.murmur128(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+        long[] offsets = new long[numHashes];
+        long combined = hash[0];
+        for (int i = 0; i < numHashes; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+}
@@ -1,15 +1,30 @@
 package com.qq.utils.Redis;
 
-import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.qq.utils.Redis.Impl.JsonCacheCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -28,23 +43,193 @@ import java.util.function.Function;
  */
 @Component
 public class CacheClient {
+    private final static Logger log = LoggerFactory.getLogger(CacheClient.class);
+
     private final StringRedisTemplate stringRedisTemplate;
+    // 缓存重建使用的分布式锁
+    private final RedisLock redisLock;
 
-    // 线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
     // NULL 数据缓存过期时间 - 2分钟
     private static final long CACHE_NULL_TTL = 2L;
+    // NULL 数据在 redis 中存储为空字节
+    private static final byte[] EMPTY = new byte[0];
     // redis 锁前缀
     private static final String LOCK_KEY = "lock:";
+    // 互斥锁过期时间 - 10秒
+    private static final long LOCK_TTL_SECONDS = 10L;
+    // 等待其他节点重建缓存时的最小、最大退避时间以及最长等待时间（毫秒）
+    private static final long MUTEX_MIN_BACKOFF_MILLIS = 10L;
+    private static final long MUTEX_MAX_BACKOFF_MILLIS = 200L;
+    private static final long MUTEX_MAX_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(LOCK_TTL_SECONDS);
+
+    // 本地一级缓存，为 null 时不启用
+    private NearCache nearCache;
+    // 各级缓存的命中统计
+    private final CacheStats stats = new CacheStats();
+    // 合并本节点内相同 key 的缓存重建
+    private final SingleFlight singleFlight = new SingleFlight();
+    // 缓存重建线程池，可以在运行时替换
+    private volatile CacheRebuildExecutor rebuildExecutor =
+            new CacheRebuildExecutor(10, 1000, CacheRebuildExecutor.RejectPolicy.DISCARD);
+    // 过期时间策略，默认不做处理
+    private TtlPolicy ttlPolicy = TtlPolicy.NONE;
+    // 序列化方式，默认为 json
+    private CacheCodec codec = new JsonCacheCodec();
+    // 大 value 压缩，默认不压缩，但可以读取压缩过的数据
+    private CacheCompressor compressor = CacheCompressor.disabled();
+    // key 前缀对应的布隆过滤器
+    private final Map<String, CacheBloomFilter> bloomFilters = new ConcurrentHashMap<>();
+    // key 前缀对应的紧凑空值缓存
+    private final Map<String, NegativeCache> negativeCaches = new ConcurrentHashMap<>();
 
     public CacheClient(StringRedisTemplate stringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.redisLock = new RedisLock(stringRedisTemplate);
+    }
+
+    /**
+     * 设置缓存重建线程池，默认为 10 个线程、队列长度 1000、队列满时丢弃
+     * <br>
+     * 原来的线程池会被关闭，等待已提交的重建任务执行完成（最多 30 秒），任务中持有的互斥锁由任务自己释放
+     *
+     * @param rebuildExecutor 重建线程池
+     */
+    public void setRebuildExecutor(CacheRebuildExecutor rebuildExecutor) {
+        CacheRebuildExecutor old = this.rebuildExecutor;
+        this.rebuildExecutor = rebuildExecutor;
+        if (old != null && old != rebuildExecutor) {
+            old.shutdown(30, TimeUnit.SECONDS);
+        }
+    }
+
+    public CacheRebuildExecutor getRebuildExecutor() {
+        return rebuildExecutor;
+    }
+
+    /**
+     * 容器关闭时等待正在进行的缓存重建完成
+     */
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdown(30, TimeUnit.SECONDS);
+        redisLock.shutdown();
+    }
+
+    /**
+     * 设置过期时间策略，queryWithPassThrough、queryAllWithPassThrough、queryWithMutex 写回缓存时生效
+     *
+     * @param ttlPolicy 过期时间策略
+     */
+    public void setTtlPolicy(TtlPolicy ttlPolicy) {
+        this.ttlPolicy = ttlPolicy == null ? TtlPolicy.NONE : ttlPolicy;
+    }
+
+    /**
+     * 设置序列化方式，更换后之前写入的缓存将无法读取，需要同时更换 key 前缀或清理旧缓存
+     *
+     * @param codec 编解码器，为 null 时使用默认的 json 编解码器
+     */
+    public void setCodec(CacheCodec codec) {
+        this.codec = codec == null ? new JsonCacheCodec() : codec;
+    }
+
+    /**
+     * 设置大 value 的压缩方式，序列化后超过阈值的数据压缩后再写入 redis
+     * <br>
+     * 读取时根据数据头部判断是否压缩过，开启前写入的数据不受影响；
+     * 多个节点共用缓存时，需要所有节点都升级到能读取压缩数据的版本后再开启
+     *
+     * @param compressor 压缩方式，传 null 表示不再压缩
+     */
+    public void setCompressor(CacheCompressor compressor) {
+        this.compressor = compressor == null ? CacheCompressor.disabled() : compressor;
+    }
+
+    /**
+     * 获取压缩统计
+     *
+     * @return
+     */
+    public CacheCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * 开启本地一级缓存，查询时先查本地缓存，未命中再查 Redis
+     *
+     * @param nearCache 本地缓存，传 null 表示关闭
+     */
+    public void setNearCache(NearCache nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * 为指定 key 前缀注册布隆过滤器，queryWithPassThrough、queryAllWithPassThrough、queryWithMutex
+     * 查询该前缀时先经过布隆过滤器，一定不存在的 id 直接返回 null，不再查询 redis 和数据库
+     * <br>
+     * 新增数据后需调用 {@link CacheBloomFilter#add}，否则新数据会被拦截
+     *
+     * @param keyPrefix redis 中缓存的 key 前缀
+     * @param filter    布隆过滤器，传 null 表示移除
+     */
+    public void registerBloomFilter(String keyPrefix, CacheBloomFilter filter) {
+        if (filter == null) {
+            bloomFilters.remove(keyPrefix);
+        } else {
+            bloomFilters.put(keyPrefix, filter);
+        }
+    }
+
+    /**
+     * 为指定 key 前缀开启紧凑空值缓存，数据不存在时不再写入空值 key，而是写入 {@link NegativeCache}
+     * <br>
+     * 对 queryWithPassThrough、queryAllWithPassThrough、queryWithMutex 生效，
+     * 开启前写入的空值 key 仍然有效，直到过期
+     *
+     * @param keyPrefix     redis 中缓存的 key 前缀
+     * @param negativeCache 空值缓存，多个前缀可以共用，传 null 表示关闭
+     */
+    public void registerNegativeCache(String keyPrefix, NegativeCache negativeCache) {
+        if (negativeCache == null) {
+            negativeCaches.remove(keyPrefix);
+        } else {
+            negativeCaches.put(keyPrefix, negativeCache);
+        }
+    }
+
+    // 判断 id 是否已知不存在，未开启紧凑空值缓存时返回 false
+    private boolean knownMissing(String keyPrefix, Object id) {
+        NegativeCache negativeCache = negativeCaches.get(keyPrefix);
+        if (negativeCache != null && negativeCache.contains(keyPrefix, id)) {
+            stats.recordNegativeHits(1);
+            return true;
+        }
+        return false;
+    }
+
+    // 判断 id 是否一定不存在
+    private boolean rejectedByBloom(String keyPrefix, Object id) {
+        CacheBloomFilter filter = bloomFilters.get(keyPrefix);
+        if (filter != null && !filter.mightContain(id)) {
+            stats.recordBloomReject();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获取缓存命中统计
+     *
+     * @return
+     */
+    public CacheStats getStats() {
+        return stats;
     }
 
     /**
      * 设置 String 类型的 key-value 及数据过期时间，参考 Redis Setex 命令
      * <br>
-     * 将任意 Java 对象序列化为 json 并存储在 string 类型的 key 中，并且可以设置 TTL 过期时间
+     * 将任意 Java 对象序列化（默认为 json）并存储在 string 类型的 key 中，并且可以设置 TTL 过期时间
      *
      * @param key
      * @param value
@@ -52,13 +237,33 @@ public class CacheClient {
      * @param unit  过期时间单位
      */
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        setValue(key, value, time, unit);
+        invalidateNear(key);
+        clearNull(key);
+    }
+
+    // 查询方法写回缓存，只删除本节点的本地缓存，不通知其他节点
+    private void setValue(String key, Object value, long time, TimeUnit unit) {
+        setRaw(key, encode(key, value), Expiration.from(time, unit));
+        evictNear(key);
+    }
+
+    // 数据写入后删除紧凑空值缓存中的记录，查询方法写回缓存前已确认不在空值缓存中，不需要调用
+    private void clearNull(String key) {
+        if (negativeCaches.isEmpty()) {
+            return;
+        }
+        negativeCaches.forEach((keyPrefix, negativeCache) -> {
+            if (key.startsWith(keyPrefix)) {
+                negativeCache.remove(keyPrefix, Collections.singletonList(key.substring(keyPrefix.length())));
+            }
+        });
     }
 
     /**
      * 设置 String 类型的 key-value 及逻辑过期时间，数据本身不会过期
      * <br>
-     * 将任意 Java 对象序列化为 json 并存储在 string 类型的 key 中，
+     * 将任意 Java 对象序列化（默认为 json）并存储在 string 类型的 key 中，
      * 并且可以设置逻辑过期时间，用于处理缓存击穿问题
      *
      * @param key
@@ -67,12 +272,249 @@ public class CacheClient {
      * @param unit  逻辑过期时间单位
      */
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        setWithLogicalExpire(key, value, time, unit, null);
+        invalidateNear(key);
+    }
+
+    // 同上，并记录本次重建缓存的耗时，用于查询方法重建缓存，只删除本节点的本地缓存
+    private void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, Long rebuildCost) {
         // 将数据进行封装（添加逻辑过期时间属性），设置逻辑过期
         RedisData redisData = new RedisData();
         redisData.setData(value);
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        redisData.setRebuildCost(rebuildCost);
         // 写入Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setRaw(key, encodeLogical(key, redisData), Expiration.persistent());
+        evictNear(key);
+    }
+
+    /**
+     * 通过一次 pipeline 批量设置逻辑过期缓存，用于热点数据预热
+     * <p>
+     * 每个 key 的逻辑过期时间在 [time, time + spreadWindow) 内随机分布，避免预热的数据同时过期、同时重建
+     *
+     * @param values       key 与数据
+     * @param time         逻辑过期时间
+     * @param spreadWindow 打散窗口，0 表示不打散
+     * @param unit         时间单位
+     */
+    public void setAllWithLogicalExpire(Map<String, ?> values, long time, long spreadWindow, TimeUnit unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<byte[]> rawKeys = new ArrayList<>(values.size());
+        List<byte[]> rawValues = new ArrayList<>(values.size());
+        values.forEach((key, value) -> {
+            RedisData redisData = new RedisData();
+            redisData.setData(value);
+            redisData.setExpireTime(now.plus(TtlPolicy.spread(time, spreadWindow, unit), ChronoUnit.MILLIS));
+            rawKeys.add(rawKey(key));
+            rawValues.add(encodeLogical(key, redisData));
+        });
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < rawKeys.size(); i++) {
+                connection.set(rawKeys.get(i), rawValues.get(i));
+            }
+            return null;
+        });
+        if (nearCache != null) {
+            nearCache.invalidateAll(values.keySet());
+        }
+    }
+
+    /**
+     * 通过一次 pipeline 批量写入缓存，过期时间按过期时间策略计算，用于数据变更后主动刷新缓存
+     * <br>
+     * 同时删除各节点的本地缓存，以及紧凑空值缓存中的记录
+     *
+     * @param keyPrefix redis 中缓存的 key 前缀
+     * @param values    id 与数据，数据不能为 null
+     * @param time      过期时间
+     * @param unit      过期时间单位
+     * @param <ID>
+     */
+    public <ID> void setAll(String keyPrefix, Map<ID, ?> values, long time, TimeUnit unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        Map<String, byte[]> writes = new LinkedHashMap<>(values.size() * 4 / 3 + 1);
+        values.forEach((id, value) -> {
+            String key = keyPrefix + id;
+            writes.put(key, encode(key, value));
+        });
+        setAllRaw(keyPrefix, writes, time, unit);
+        if (nearCache != null) {
+            nearCache.invalidateAll(writes.keySet());
+        }
+        NegativeCache negativeCache = negativeCaches.get(keyPrefix);
+        if (negativeCache != null) {
+            negativeCache.remove(keyPrefix, values.keySet());
+        }
+    }
+
+    /**
+     * 通过一次 pipeline 批量写入带软过期时间的缓存，数据格式与 {@link #queryWithPassThrough} 的 staleTime 重载相同，
+     * 用于数据变更后主动刷新缓存
+     * <br>
+     * 同时删除各节点的本地缓存，以及紧凑空值缓存中的记录
+     *
+     * @param keyPrefix redis 中缓存的 key 前缀
+     * @param values    id 与数据，数据不能为 null
+     * @param time      软过期时间，按过期时间策略计算
+     * @param staleTime 软过期后仍可以返回旧数据的时间
+     * @param unit      时间单位
+     * @param <ID>
+     */
+    public <ID> void setAllWithStaleTime(String keyPrefix, Map<ID, ?> values, long time, long staleTime, TimeUnit unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<String> keys = new ArrayList<>(values.size());
+        List<byte[]> rawValues = new ArrayList<>(values.size());
+        List<Long> ttlMillis = new ArrayList<>(values.size());
+        values.forEach((id, value) -> {
+            String key = keyPrefix + id;
+            long softMillis = ttlPolicy.ttlMillis(keyPrefix, time, unit);
+            RedisData redisData = new RedisData();
+            redisData.setData(value);
+            redisData.setExpireTime(now.plus(softMillis, ChronoUnit.MILLIS));
+            keys.add(key);
+            rawValues.add(encodeLogical(key, redisData));
+            ttlMillis.add(softMillis + unit.toMillis(staleTime));
+        });
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < keys.size(); i++) {
+                connection.set(rawKey(keys.get(i)), rawValues.get(i), Expiration.milliseconds(ttlMillis.get(i)),
+                        RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+        if (nearCache != null) {
+            nearCache.invalidateAll(keys);
+        }
+        NegativeCache negativeCache = negativeCaches.get(keyPrefix);
+        if (negativeCache != null) {
+            negativeCache.remove(keyPrefix, values.keySet());
+        }
+    }
+
+    /**
+     * 通过一次 pipeline 批量删除缓存，用于数据变更后主动失效缓存
+     * <br>
+     * 同时删除各节点的本地缓存，以及紧凑空值缓存中的记录
+     *
+     * @param keyPrefix redis 中缓存的 key 前缀
+     * @param ids       数据 id
+     */
+    public void deleteAll(String keyPrefix, Collection<?> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            keys.add(keyPrefix + id);
+        }
+        // 逐个 key 删除，集群模式下不会出现 CROSSSLOT
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.del(rawKey(key));
+            }
+            return null;
+        });
+        if (nearCache != null) {
+            nearCache.invalidateAll(keys);
+        }
+        NegativeCache negativeCache = negativeCaches.get(keyPrefix);
+        if (negativeCache != null) {
+            negativeCache.remove(keyPrefix, ids);
+        }
+    }
+
+    // 按过期时间策略写入缓存
+    private void setWithPolicy(String keyPrefix, String key, Object value, Long time, TimeUnit unit) {
+        setValue(key, value, ttlPolicy.ttlMillis(keyPrefix, time, unit), TimeUnit.MILLISECONDS);
+    }
+
+    // 写入空值，解决缓存穿透问题，空值的过期时间同样做随机抖动；开启紧凑空值缓存时写入 NegativeCache
+    private void setNull(String keyPrefix, Object id, String key) {
+        NegativeCache negativeCache = negativeCaches.get(keyPrefix);
+        if (negativeCache == null) {
+            setRaw(key, EMPTY, Expiration.milliseconds(nullTtlMillis()));
+        } else {
+            negativeCache.add(keyPrefix, id);
+        }
+        evictNear(key);
+    }
+
+    private long nullTtlMillis() {
+        return ttlPolicy.ttlMillis(null, CACHE_NULL_TTL, TimeUnit.MINUTES);
+    }
+
+    private byte[] rawKey(String key) {
+        return stringRedisTemplate.getStringSerializer().serialize(key);
+    }
+
+    // 读取 redis 中的数据，压缩过的数据会先解压
+    private byte[] getRaw(String key) {
+        byte[] rawKey = rawKey(key);
+        byte[] bytes = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        return compressor.decompress(key, bytes);
+    }
+
+    private void setRaw(String key, byte[] value, Expiration expiration) {
+        byte[] rawKey = rawKey(key);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.set(rawKey, value, expiration, RedisStringCommands.SetOption.upsert()));
+    }
+
+    // 序列化，超过阈值时压缩
+    private byte[] encode(String key, Object value) {
+        return compressor.compress(key, codec.encode(value));
+    }
+
+    private byte[] encodeLogical(String key, RedisData redisData) {
+        return compressor.compress(key, codec.encodeLogical(redisData));
+    }
+
+    // 数据更新后删除所有节点的本地缓存，只在对外的写入方法中调用
+    private void invalidateNear(String key) {
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+    }
+
+    // 查询方法写回缓存后只删除本节点的本地缓存，其他节点的本地缓存在本地 TTL 后过期，
+    // 避免随机 id 扫描时每次未命中都向所有节点广播
+    private void evictNear(String key) {
+        if (nearCache != null) {
+            nearCache.evict(key);
+        }
+    }
+
+    // 查询本地缓存，未开启时返回 null
+    private <R> R getNear(String key, Class<R> type) {
+        if (nearCache == null) {
+            return null;
+        }
+        R result = nearCache.get(key, type);
+        stats.recordL1(result != null);
+        return result;
+    }
+
+    // 放入本地缓存
+    private void putNear(String key, Object value) {
+        if (nearCache != null) {
+            nearCache.put(key, value);
+        }
+    }
+
+    // 查询 redis 缓存，并统计命中情况
+    private byte[] getRedis(String key) {
+        byte[] bytes = getRaw(key);
+        stats.recordL2(bytes != null);
+        return bytes;
     }
 
     /**
@@ -90,43 +532,308 @@ public class CacheClient {
      */
     public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type,
                                           Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 布隆过滤器判断一定不存在时直接返回
+        if (rejectedByBloom(keyPrefix, id)) {
+            return null;
+        }
         String key = keyPrefix + id;
+        // 0.先查本地缓存
+        R result = getNear(key, type);
+        if (result != null) {
+            return result;
+        }
         // 1.从 redis 中查询数据缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getRedis(key);
         // 2.判断是否存在
-        if (json != null) {
+        if (bytes != null) {
             // 判断命中的是否是空值
-            if (StrUtil.isBlank(json)) {
-                return null;
-            } else {
-                return JSONUtil.toBean(json, type);
-            }
+            return parseCached(key, bytes, type);
+        }
+        if (knownMissing(keyPrefix, id)) {
+            return null;
         }
 
         // 3.不存在，根据 id 查询数据库
-        R result = dbFallback.apply(id);
+        result = dbFallback.apply(id);
         // 4.判断是否存在
         if (result == null) {
             // 将空值写入 redis
-            set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            setNull(keyPrefix, id, key);
         } else {
             // 5.存在，写入 redis
-            set(key, result, time, unit);
+            setWithPolicy(keyPrefix, key, result, time, unit);
+            putNear(key, result);
         }
 
         return result;
     }
 
-    // 获取锁
-    private boolean tryLock(String key) {
-        // 相当于 setnx 指令，只有 key 不存在的时候才设置
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
+    /**
+     * 根据指定的 key 查询缓存，软过期后先返回旧数据，再在后台刷新（stale-while-revalidate）
+     * <p>
+     * 缓存同时带有两个过期时间：
+     * <br>
+     * 1) 软过期时间 time，与逻辑过期一样存储在数据中，未到软过期时间直接返回；
+     * <br>
+     * 2) 硬过期时间 time + staleTime，即 redis 中 key 的 TTL。软、硬过期之间命中时立即返回旧数据，
+     * 并由获取到互斥锁的请求在后台刷新，同一个 key 在整个集群中同时只有一个刷新任务；
+     * <br>
+     * 3) 超过硬过期时间后 key 已被 redis 删除，与 {@link #queryWithPassThrough} 一样同步查询数据库。
+     * <p>
+     * 与 {@link #queryWithLogicalExpire} 相比不需要预热，长时间不访问的数据也会自动清理。
+     * 数据格式与 {@link #setWithLogicalExpire} 相同，不能与不带 staleTime 的方法共用同一个 key 前缀。
+     *
+     * @param keyPrefix  redis 中缓存的 key 前缀
+     * @param id         数据 id
+     * @param type       数据类型
+     * @param dbFallback 查询数据库的回调函数
+     * @param time       软过期时间，按过期时间策略计算
+     * @param staleTime  软过期后仍可以返回旧数据的时间
+     * @param unit       时间单位
+     * @param <R>
+     * @param <ID>
+     * @return 查询到的数据，刷新过程中返回旧数据
+     */
+    public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type,
+                                          Function<ID, R> dbFallback, Long time, Long staleTime, TimeUnit unit) {
+        // 布隆过滤器判断一定不存在时直接返回
+        if (rejectedByBloom(keyPrefix, id)) {
+            return null;
+        }
+        String key = keyPrefix + id;
+        // 0.先查本地缓存，本地缓存中保存带软过期时间的数据，已软过期时继续查询 redis 并触发刷新
+        RedisData nearData = getNear(key, RedisData.class);
+        if (nearData != null && !isExpired(nearData)) {
+            return type.cast(nearData.getData());
+        }
+        // 1.从 redis 中查询数据缓存
+        byte[] bytes = getRedis(key);
+        R result;
+        if (bytes == null) {
+            if (knownMissing(keyPrefix, id)) {
+                return null;
+            }
+            // 2.已硬过期或从未缓存，同步查询数据库
+            result = dbFallback.apply(id);
+            if (result == null) {
+                setNull(keyPrefix, id, key);
+            } else {
+                putNear(key, setWithStaleTime(keyPrefix, key, result, time, staleTime, unit, null));
+            }
+            return result;
+        }
+        if (bytes.length == 0) {
+            return null;
+        }
+        // 3.命中，未到软过期时间直接返回
+        RedisData redisData = codec.decodeLogical(bytes, type);
+        result = type.cast(redisData.getData());
+        if (!isExpired(redisData)) {
+            putNear(key, redisData);
+            return result;
+        }
+        // 4.已软过期，获取到锁的请求在后台刷新，所有请求都立即返回旧数据
+        stats.recordStale();
+        RedisLock.Lease lock = tryLock(LOCK_KEY + key);
+        if (lock != null) {
+            revalidateAsync(keyPrefix, key, lock, id, type, dbFallback, time, staleTime, unit);
+        }
+        return result;
+    }
+
+    // 写入带软过期时间的缓存，key 的 TTL 为软过期时间 + staleTime，返回写入的数据
+    private RedisData setWithStaleTime(String keyPrefix, String key, Object value, long time, long staleTime,
+                                  TimeUnit unit, Long rebuildCost) {
+        long softMillis = ttlPolicy.ttlMillis(keyPrefix, time, unit);
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plus(softMillis, ChronoUnit.MILLIS));
+        redisData.setRebuildCost(rebuildCost);
+        setRaw(key, encodeLogical(key, redisData), Expiration.milliseconds(softMillis + unit.toMillis(staleTime)));
+        evictNear(key);
+        return redisData;
+    }
+
+    /**
+     * 在线程池中刷新软过期的缓存，调用前需已获取互斥锁，刷新完成后释放
+     * <p>
+     * 刷新前再读取一次缓存，其他节点刚刷新完成时不再重复查询数据库；数据已不存在时写入空值
+     */
+    private <R, ID> void revalidateAsync(String keyPrefix, String key, RedisLock.Lease lock, ID id, Class<R> type,
+                                         Function<ID, R> dbFallback, long time, long staleTime, TimeUnit unit) {
+        boolean accepted = rebuildExecutor.submit(key, () -> {
+            try {
+                byte[] latest = getRaw(key);
+                if (latest != null && latest.length > 0 && !isExpired(codec.decodeLogical(latest, type))) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                R newR = dbFallback.apply(id);
+                if (newR == null) {
+                    // 紧凑空值缓存不会覆盖旧数据，需要先删除
+                    if (negativeCaches.containsKey(keyPrefix)) {
+                        stringRedisTemplate.delete(key);
+                    }
+                    setNull(keyPrefix, id, key);
+                } else {
+                    setWithStaleTime(keyPrefix, key, newR, time, staleTime, unit, System.currentTimeMillis() - start);
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+        if (!accepted) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 批量查询缓存，并反序列化为指定类型，利用缓存空值的方式解决缓存穿透问题
+     * <p>
+     * 与循环调用 {@link #queryWithPassThrough} 相比：
+     * <br>
+     * 1) 所有 key 通过一次 MGET 查询；
+     * <br>
+     * 2) 未命中的 id 汇总后只调用一次数据库查询；
+     * <br>
+     * 3) 查询结果（包括不存在的 id 对应的空值）通过一次 pipeline 写回 redis。
+     *
+     * @param keyPrefix    redis 中缓存的 key 前缀
+     * @param ids          数据 id 集合
+     * @param type         数据类型
+     * @param bulkFallback 批量查询数据库的回调函数，入参为缓存未命中的 id，返回 id 与数据的映射，不存在的 id 不需要放入
+     * @param time         缓存过期时间
+     * @param unit         缓存过期时间单位
+     * @param <R>
+     * @param <ID>
+     * @return id 与数据的映射，按 ids 的顺序排列，不存在的数据不会放入
+     */
+    public <R, ID> Map<ID, R> queryAllWithPassThrough(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                                      Function<Collection<ID>, Map<ID, R>> bulkFallback,
+                                                      Long time, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return result;
+        }
+        // 去重，保持原有顺序，并过滤掉布隆过滤器判断一定不存在的 id
+        Set<ID> idSet = new LinkedHashSet<>(ids);
+        idSet.removeIf(id -> rejectedByBloom(keyPrefix, id));
+        // 0.先查本地缓存
+        List<ID> remoteIds = new ArrayList<>(idSet.size());
+        for (ID id : idSet) {
+            R value = getNear(keyPrefix + id, type);
+            if (value != null) {
+                result.put(id, value);
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+
+        // 1.一次 MGET 查询 redis
+        List<String> keys = new ArrayList<>(remoteIds.size());
+        byte[][] rawKeys = new byte[remoteIds.size()][];
+        for (int i = 0; i < remoteIds.size(); i++) {
+            keys.add(keyPrefix + remoteIds.get(i));
+            rawKeys[i] = rawKey(keys.get(i));
+        }
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(rawKeys));
+        // 2.收集未命中的 id
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            byte[] bytes = values == null ? null : compressor.decompress(keys.get(i), values.get(i));
+            stats.recordL2(bytes != null);
+            if (bytes == null) {
+                missIds.add(remoteIds.get(i));
+            } else if (bytes.length > 0) {
+                R value = codec.decode(bytes, type);
+                putNear(keys.get(i), value);
+                result.put(remoteIds.get(i), value);
+            }
+            // 空值说明数据不存在，直接跳过
+        }
+        // 开启紧凑空值缓存时，过滤掉已知不存在的 id
+        NegativeCache negativeCache = negativeCaches.get(keyPrefix);
+        if (negativeCache != null && !missIds.isEmpty()) {
+            Set<ID> missing = negativeCache.containsAll(keyPrefix, missIds);
+            stats.recordNegativeHits(missing.size());
+            missIds.removeAll(missing);
+        }
+        if (missIds.isEmpty()) {
+            return sortByIds(idSet, result);
+        }
+
+        // 3.未命中的 id 一次性查询数据库
+        Map<ID, R> loaded = bulkFallback.apply(missIds);
+        if (loaded == null) {
+            loaded = Collections.emptyMap();
+        }
+        // 4.通过 pipeline 批量写回 redis，不存在的数据写入空值
+        Map<String, byte[]> writes = new LinkedHashMap<>(missIds.size() * 4 / 3 + 1);
+        Map<String, Object> found = new HashMap<>(loaded.size() * 4 / 3 + 1);
+        List<ID> nullIds = new ArrayList<>();
+        for (ID id : missIds) {
+            String key = keyPrefix + id;
+            R value = loaded.get(id);
+            if (value == null && negativeCache != null) {
+                nullIds.add(id);
+            } else if (value == null) {
+                writes.put(key, EMPTY);
+            } else {
+                writes.put(key, encode(key, value));
+                found.put(key, value);
+                result.put(id, value);
+            }
+        }
+        setAllRaw(keyPrefix, writes, time, unit);
+        if (!nullIds.isEmpty()) {
+            negativeCache.add(keyPrefix, nullIds);
+        }
+        found.forEach(this::putNear);
+        return sortByIds(idSet, result);
+    }
+
+    // 按 id 的原始顺序排列查询结果
+    private static <R, ID> Map<ID, R> sortByIds(Set<ID> ids, Map<ID, R> values) {
+        Map<ID, R> sorted = new LinkedHashMap<>(values.size() * 4 / 3 + 1);
+        for (ID id : ids) {
+            R value = values.get(id);
+            if (value != null) {
+                sorted.put(id, value);
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * 通过一次 pipeline 批量写入 String 类型的 key-value，每个 key 的过期时间按过期时间策略单独计算，
+     * 空值使用空值的过期时间
+     *
+     * @param keyPrefix redis 中缓存的 key 前缀
+     * @param values    key 与序列化后的数据
+     * @param time      过期时间
+     * @param unit      过期时间单位
+     */
+    private void setAllRaw(String keyPrefix, Map<String, byte[]> values, long time, TimeUnit unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((key, value) -> connection.set(rawKey(key), value,
+                    Expiration.milliseconds(value.length == 0 ? nullTtlMillis() : ttlPolicy.ttlMillis(keyPrefix, time, unit)),
+                    RedisStringCommands.SetOption.upsert()));
+            return null;
+        });
+        if (nearCache != null) {
+            values.keySet().forEach(nearCache::evict);
+        }
     }
 
-    // 释放锁
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
+    // 获取锁，重建期间由看门狗自动续期，失败返回 null
+    private RedisLock.Lease tryLock(String key) {
+        return redisLock.tryLock(key, LOCK_TTL_SECONDS, TimeUnit.SECONDS, true);
     }
 
     /**
@@ -145,125 +852,264 @@ public class CacheClient {
     public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type,
                                             Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        // 0.先查本地缓存，本地缓存中保存带逻辑过期时间的数据，已过期时继续查询 redis 并触发重建
+        RedisData nearData = getNear(key, RedisData.class);
+        if (nearData != null && !isExpired(nearData)) {
+            return type.cast(nearData.getData());
+        }
         // 1.从 redis 中查询数据缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getRedis(key);
         // 2.判断是否存在
         // 热点数据一般会提前预热，缓存在 redis 中，且采用逻辑过期方案缓存不会自动失效，
         // 因此一定存在缓存，若不存在则数据 id 有问题
-        if (StrUtil.isBlank(json)) {
+        if (bytes == null || bytes.length == 0) {
             // 3.不存在，直接返回
             return null;
         }
-        // 4.命中，需要先把json反序列化为对象
-//        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-//        R result = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-//        LocalDateTime expireTime = redisData.getExpireTime();
-//        // 5.判断是否过期
-//        if (expireTime.isAfter(LocalDateTime.now())) {
-//            // 5.1.未过期，直接返回数据信息
-//            return result;
-//        }
-        R result = checkIsExpired(json, type);
-        if (result != null) {
+        // 4.命中，反序列化为对象
+        RedisData redisData = codec.decodeLogical(bytes, type);
+        R result = type.cast(redisData.getData());
+        // 5.判断是否过期
+        if (!isExpired(redisData)) {
+            // 5.1.未过期，直接返回数据信息
+            putNear(key, redisData);
             return result;
         }
 
         // 5.2.已过期，需要缓存重建
         // 6.缓存重建
         // 6.1.获取互斥锁
-        String lockKey = LOCK_KEY + key;
-        boolean isLock = tryLock(lockKey);
+        RedisLock.Lease lock = tryLock(LOCK_KEY + key);
         // 6.2.判断是否获取锁成功
-        if (isLock) {
+        if (lock != null) {
             // 成功，但需要二次校验
-            result = checkIsExpired(stringRedisTemplate.opsForValue().get(key), type);
-            if (result == null) {
-                // 另外开一个线程更新缓存
-                CACHE_REBUILD_EXECUTOR.submit(() -> {
-                    try {
-                        // 查询数据库
-                        R newR = dbFallback.apply(id);
-                        // 重建缓存
-                        this.setWithLogicalExpire(key, newR, time, unit);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    } finally {
-                        unlock(lockKey);
-                    }
-                });
+            byte[] latest = getRaw(key);
+            RedisData latestData = latest == null || latest.length == 0 ? null : codec.decodeLogical(latest, type);
+            if (latestData != null && !isExpired(latestData)) {
+                // 其他线程已经重建完成
+                lock.unlock();
+                return type.cast(latestData.getData());
             }
+            // 6.3.另外开一个线程更新缓存
+            rebuildLogicalAsync(key, lock, id, dbFallback, time, unit);
         }
         // 6.4.返回过期的商铺信息，因此不能保证数据的一致性
         return result;
     }
 
     /**
-     * 判断数据是否逻辑过期
+     * 在线程池中查询数据库并重建逻辑过期缓存，调用前需已获取互斥锁，重建完成后释放
+     * <p>
+     * 同时记录重建耗时，供 {@link #queryWithEarlyRefresh} 估算重建成本，
+     * 任务重复或被线程池丢弃时直接释放锁，由之后的请求再次触发
+     */
+    private <ID> void rebuildLogicalAsync(String key, RedisLock.Lease lock, ID id, Function<ID, ?> dbFallback,
+                                          Long time, TimeUnit unit) {
+        boolean accepted = rebuildExecutor.submit(key, () -> {
+            try {
+                long start = System.currentTimeMillis();
+                // 查询数据库
+                Object newR = dbFallback.apply(id);
+                // 重建缓存
+                this.setWithLogicalExpire(key, newR, time, unit, System.currentTimeMillis() - start);
+            } finally {
+                lock.unlock();
+            }
+        });
+        if (!accepted) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 根据指定的 key 查询缓存，并在逻辑过期前按概率提前刷新（XFetch 算法）
+     * <p>
+     * {@link #queryWithLogicalExpire} 只有在逻辑过期后才开始重建，过期瞬间大量请求同时竞争锁，
+     * 且重建完成前一直返回旧数据。这里在每次读取时按如下条件决定是否提前刷新：
+     * <br>
+     * now - rebuildCost * beta * ln(random) >= expireTime
+     * <br>
+     * 其中 random 为 (0, 1] 的随机数，rebuildCost 为上一次重建的耗时。越接近过期时间、重建越慢，
+     * 提前刷新的概率越高，访问频繁的 key 几乎总能在过期前被刷新，而冷门 key 则很少提前刷新。
+     * <p>
+     * 数据格式与 {@link #setWithLogicalExpire} 相同，同样需要提前预热。
      *
-     * @param json 数据的 json 格式
-     * @param type 数据类型
+     * @param keyPrefix  redis 中缓存的 key 前缀
+     * @param id         数据 id
+     * @param type       数据类型
+     * @param dbFallback 查询数据库的回调函数
+     * @param time       逻辑过期时间
+     * @param unit       逻辑过期时间单位
+     * @param beta       提前刷新的积极程度，默认为 1，大于 1 时更早刷新
      * @param <R>
-     * @return
+     * @param <ID>
+     * @return 查询到的数据，刷新过程中返回旧数据
      */
-    private <R> R checkIsExpired(String json, Class<R> type) {
-        if (StrUtil.isNotBlank(json)) {
-            // 需要先把json反序列化为对象
-            RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-            R result = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-            LocalDateTime expireTime = redisData.getExpireTime();
-            // 判断是否过期
-            if (expireTime.isAfter(LocalDateTime.now())) {
-                // 未过期，直接返回数据信息
-                return result;
-            }
+    public <R, ID> R queryWithEarlyRefresh(String keyPrefix, ID id, Class<R> type,
+                                           Function<ID, R> dbFallback, Long time, TimeUnit unit, double beta) {
+        String key = keyPrefix + id;
+        // 0.先查本地缓存，本地缓存中保存过期时间和重建耗时，每次命中同样按概率判断是否提前刷新，
+        // 需要刷新时继续查询 redis，其他节点可能已经刷新完成
+        RedisData nearData = getNear(key, RedisData.class);
+        if (nearData != null && !shouldRefresh(nearData, beta)) {
+            return type.cast(nearData.getData());
+        }
+        // 1.从 redis 中查询数据缓存，不存在时直接返回
+        byte[] bytes = getRedis(key);
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        RedisData redisData = codec.decodeLogical(bytes, type);
+        R result = type.cast(redisData.getData());
+        // 2.判断是否需要提前刷新
+        if (!shouldRefresh(redisData, beta)) {
+            putNear(key, redisData);
+            return result;
+        }
+        // 3.获取互斥锁，由一个线程在后台重建，其他请求继续返回当前数据
+        RedisLock.Lease lock = tryLock(LOCK_KEY + key);
+        if (lock != null) {
+            rebuildLogicalAsync(key, lock, id, dbFallback, time, unit);
+        }
+        return result;
+    }
+
+    /**
+     * 根据指定的 key 查询缓存，并在逻辑过期前按概率提前刷新，beta 取 1
+     *
+     * @see #queryWithEarlyRefresh(String, Object, Class, Function, Long, TimeUnit, double)
+     */
+    public <R, ID> R queryWithEarlyRefresh(String keyPrefix, ID id, Class<R> type,
+                                           Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        return queryWithEarlyRefresh(keyPrefix, id, type, dbFallback, time, unit, 1.0);
+    }
+
+    // XFetch 判断：now - rebuildCost * beta * ln(random) >= expireTime
+    private static boolean shouldRefresh(RedisData redisData, double beta) {
+        LocalDateTime expireTime = redisData.getExpireTime();
+        if (expireTime == null) {
+            return true;
+        }
+        long expireAt = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Long rebuildCost = redisData.getRebuildCost();
+        double gap = 0;
+        if (rebuildCost != null && rebuildCost > 0) {
+            // 1 - nextDouble() 的范围是 (0, 1]，避免 ln(0)
+            gap = -rebuildCost * beta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
         }
-        return null;
+        return System.currentTimeMillis() + gap >= expireAt;
+    }
+
+    /**
+     * 判断数据是否逻辑过期
+     *
+     * @param redisData 带逻辑过期时间的数据
+     * @return
+     */
+    private static boolean isExpired(RedisData redisData) {
+        LocalDateTime expireTime = redisData.getExpireTime();
+        return expireTime == null || !expireTime.isAfter(LocalDateTime.now());
     }
 
     public <R, ID> R queryWithMutex(String keyPrefix, ID id, Class<R> type,
                                     Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 布隆过滤器判断一定不存在时直接返回
+        if (rejectedByBloom(keyPrefix, id)) {
+            return null;
+        }
         String key = keyPrefix + id;
+        // 0.先查本地缓存
+        R result = getNear(key, type);
+        if (result != null) {
+            return result;
+        }
         // 1.从 redis 中查询数据缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
-        // 2.判断是否存在
-        if (StrUtil.isNotBlank(json)) {
-            // 存在，直接返回
-            return JSONUtil.toBean(json, type);
+        byte[] bytes = getRedis(key);
+        // 2.判断是否存在，命中空值时返回 null，解决缓存穿透问题
+        if (bytes != null) {
+            return parseCached(key, bytes, type);
         }
-        // 判断命中的值是否是空值，解决缓存击穿问题
-        if (json != null) {
-            // 返回一个错误信息
+        if (knownMissing(keyPrefix, id)) {
             return null;
         }
-        // 4.实现缓存重构
-        // 4.1 获取互斥锁
+        // 4.实现缓存重构，同一节点上相同 key 的并发请求共享一次重建
+        return singleFlight.execute(key, () -> rebuildWithMutex(keyPrefix, key, id, type, dbFallback, time, unit));
+    }
+
+    /**
+     * 获取互斥锁后查询数据库并重建缓存
+     * <p>
+     * 获取锁失败说明其他节点正在重建，按指数退避（有上限）休眠后重新查询缓存，
+     * 用循环代替递归，等待总时长超过锁的过期时间后不再等待，直接查询数据库。
+     */
+    private <R, ID> R rebuildWithMutex(String keyPrefix, String key, ID id, Class<R> type,
+                                       Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String lockKey = LOCK_KEY + key;
-        R result = null;
-        try {
-            boolean isLock = tryLock(lockKey);
-            // 4.2 判断否获取成功
-            if (!isLock) {
-                //4.3 失败，则休眠重试
-                Thread.sleep(50);
-                return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
+        long backoff = MUTEX_MIN_BACKOFF_MILLIS;
+        long deadline = System.currentTimeMillis() + MUTEX_MAX_WAIT_MILLIS;
+        while (true) {
+            // 4.1 获取互斥锁
+            RedisLock.Lease lock = tryLock(lockKey);
+            if (lock != null) {
+                try {
+                    // 4.2 获取成功，二次校验，避免重复重建
+                    byte[] bytes = getRaw(key);
+                    if (bytes != null) {
+                        return parseCached(key, bytes, type);
+                    }
+                    if (knownMissing(keyPrefix, id)) {
+                        return null;
+                    }
+                    // 4.3 根据id查询数据库并写入redis
+                    return loadAndCache(keyPrefix, key, id, dbFallback, time, unit);
+                } finally {
+                    // 释放互斥锁
+                    lock.unlock();
+                }
             }
-            // 4.4 根据id查询数据库
-            result = dbFallback.apply(id);
-            // 5.不存在，返回错误
-            if (result == null) {
-                //将空值写入redis
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                //返回错误信息
+            // 4.4 获取失败，说明其他节点正在重建，退避后查询缓存是否已重建
+            if (System.currentTimeMillis() >= deadline) {
+                log.warn("等待缓存重建超时，直接查询数据库，key: {}", key);
+                return dbFallback.apply(id);
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            backoff = Math.min(backoff * 2, MUTEX_MAX_BACKOFF_MILLIS);
+            byte[] bytes = getRaw(key);
+            if (bytes != null) {
+                return parseCached(key, bytes, type);
+            }
+            if (knownMissing(keyPrefix, id)) {
                 return null;
             }
-            // 6.写入redis
-            set(key, result, time, unit);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        } finally {
-            //7.释放互斥锁
-            unlock(lockKey);
         }
+    }
+
+    // 解析 redis 中的缓存，空值返回 null
+    private <R> R parseCached(String key, byte[] bytes, Class<R> type) {
+        if (bytes.length == 0) {
+            return null;
+        }
+        R result = codec.decode(bytes, type);
+        putNear(key, result);
+        return result;
+    }
+
+    // 查询数据库并写入 redis，不存在时写入空值
+    private <R, ID> R loadAndCache(String keyPrefix, String key, ID id, Function<ID, R> dbFallback,
+                                   Long time, TimeUnit unit) {
+        R result = dbFallback.apply(id);
+        if (result == null) {
+            // 将空值写入redis
+            setNull(keyPrefix, id, key);
+            return null;
+        }
+        setWithPolicy(keyPrefix, key, result, time, unit);
+        putNear(key, result);
         return result;
     }
 }
@@ -0,0 +1,49 @@
+package com.qq.utils.Redis;
+
+/**
+ * {@link CacheClient} 的序列化方式
+ * <p>
+ * 负责 Java 对象与 Redis 中存储的字节之间的转换，默认实现为
+ * {@link com.qq.utils.Redis.Impl.JsonCacheCodec}，与之前直接使用 JSONUtil 存储的数据兼容；
+ * 对体积较大的对象可以换成 {@link com.qq.utils.Redis.Impl.BinaryCacheCodec}。
+ * <br>
+ * 空字节数组表示缓存的空值，由 {@link CacheClient} 直接处理，不会交给编解码器。
+ */
+public interface CacheCodec {
+
+    /**
+     * 序列化普通缓存数据
+     *
+     * @param value 数据，不能为 null
+     * @return 序列化后的字节
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 反序列化普通缓存数据
+     *
+     * @param bytes 序列化后的字节
+     * @param type  数据类型
+     * @param <R>
+     * @return 数据
+     */
+    <R> R decode(byte[] bytes, Class<R> type);
+
+    /**
+     * 序列化带逻辑过期时间的缓存数据
+     *
+     * @param redisData 数据及逻辑过期时间
+     * @return 序列化后的字节
+     */
+    byte[] encodeLogical(RedisData redisData);
+
+    /**
+     * 反序列化带逻辑过期时间的缓存数据，只解析一次
+     *
+     * @param bytes 序列化后的字节
+     * @param type  数据类型
+     * @param <R>
+     * @return 逻辑过期时间及数据，其中 data 已经是 type 类型
+     */
+    <R> RedisData decodeLogical(byte[] bytes, Class<R> type);
+}
@@ -0,0 +1,317 @@
+package com.qq.utils.Redis;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link CacheClient} 大 value 的压缩
+ * <p>
+ * 在编解码器之后、写入 Redis 之前处理序列化后的字节：
+ * <br>
+ * 1) 长度不小于阈值的数据使用 Deflate 压缩，压缩后没有明显变小（小于原长度的 90%）时按原样存储；
+ * <br>
+ * 2) 压缩后的数据以 1 字节标识(0xC1) + 1 字节压缩算法 + 4 字节原始长度 开头，
+ * 0xC1 不会出现在 json 或 {@link com.qq.utils.Redis.Impl.BinaryCacheCodec} 数据的开头，
+ * 因此没有标识的数据按未压缩处理，开启压缩前写入的旧数据可以直接读取；
+ * <br>
+ * 3) 按 key 前缀（最后一个 ':' 及之前的部分）统计压缩率和耗时。
+ * <p>
+ * 关闭压缩（阈值为 Integer.MAX_VALUE）时仍然可以读取压缩过的数据，可以先在所有节点上升级，再开启压缩。
+ */
+public class CacheCompressor {
+    private static final byte MAGIC = (byte) 0xC1;
+    private static final byte DEFLATE = 1;
+    private static final int HEADER_LENGTH = 6;
+    // 压缩后不超过原长度的 90% 才按压缩格式存储
+    private static final double MIN_SAVING_RATIO = 0.9;
+
+    /**
+     * 默认阈值 - 4KB
+     */
+    public static final int DEFAULT_THRESHOLD = 4 * 1024;
+
+    // Deflater / Inflater 持有堆外内存，每个线程复用一个
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private final int threshold;
+    private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 使用默认阈值 4KB
+     */
+    public CacheCompressor() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold 需要压缩的最小字节数
+     */
+    public CacheCompressor(int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold 必须大于0");
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * 不压缩，只负责读取压缩过的数据
+     *
+     * @return
+     */
+    public static CacheCompressor disabled() {
+        return new CacheCompressor(Integer.MAX_VALUE);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * 压缩序列化后的数据
+     *
+     * @param key   redis 中的 key，用于按前缀统计
+     * @param bytes 序列化后的数据
+     * @return 长度小于阈值或压缩效果不明显时返回原数据
+     */
+    public byte[] compress(String key, byte[] bytes) {
+        if (bytes.length < threshold) {
+            return bytes;
+        }
+        long begin = System.nanoTime();
+        Deflater deflater = DEFLATER.get();
+        byte[] out;
+        int length;
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            out = new byte[HEADER_LENGTH + (int) (bytes.length * MIN_SAVING_RATIO)];
+            length = HEADER_LENGTH;
+            while (!deflater.finished() && length < out.length) {
+                length += deflater.deflate(out, length, out.length - length);
+            }
+        } finally {
+            deflater.reset();
+        }
+        Stats prefixStats = statsOf(key);
+        // 输出缓冲区写满仍未结束，说明压缩效果不明显
+        if (length >= out.length) {
+            prefixStats.skipped.increment();
+            prefixStats.compressNanos.add(System.nanoTime() - begin);
+            return bytes;
+        }
+        out[0] = MAGIC;
+        out[1] = DEFLATE;
+        writeInt(out, 2, bytes.length);
+        byte[] result = new byte[length];
+        System.arraycopy(out, 0, result, 0, length);
+        prefixStats.compressed.increment();
+        prefixStats.rawBytes.add(bytes.length);
+        prefixStats.storedBytes.add(length);
+        prefixStats.compressNanos.add(System.nanoTime() - begin);
+        return result;
+    }
+
+    /**
+     * 解压 redis 中读取的数据
+     *
+     * @param key   redis 中的 key，用于按前缀统计
+     * @param bytes redis 中读取的数据，可以为 null
+     * @return 没有压缩标识的数据原样返回
+     */
+    public byte[] decompress(String key, byte[] bytes) {
+        if (!isCompressed(bytes)) {
+            return bytes;
+        }
+        if (bytes[1] != DEFLATE) {
+            throw new IllegalStateException("不支持的压缩算法: " + bytes[1] + ", key: " + key);
+        }
+        long begin = System.nanoTime();
+        byte[] result = new byte[readInt(bytes, 2)];
+        Inflater inflater = INFLATER.get();
+        try {
+            inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            int length = 0;
+            while (length < result.length && !inflater.finished()) {
+                int n = inflater.inflate(result, length, result.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != result.length) {
+                throw new IllegalStateException("压缩数据不完整, key: " + key);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("压缩数据损坏, key: " + key, e);
+        } finally {
+            inflater.reset();
+        }
+        Stats prefixStats = statsOf(key);
+        prefixStats.decompressed.increment();
+        prefixStats.decompressNanos.add(System.nanoTime() - begin);
+        return result;
+    }
+
+    /**
+     * 判断数据是否为压缩格式
+     *
+     * @param bytes redis 中读取的数据
+     * @return
+     */
+    public static boolean isCompressed(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC;
+    }
+
+    /**
+     * 所有前缀的压缩统计，按前缀排序
+     *
+     * @return
+     */
+    public Map<String, Stats> getStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(stats));
+    }
+
+    /**
+     * 某个前缀的压缩统计
+     *
+     * @param keyPrefix key 前缀，包括最后的 ':'
+     * @return 没有压缩过该前缀的数据时返回 null
+     */
+    public Stats getStats(String keyPrefix) {
+        return stats.get(keyPrefix);
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void resetStats() {
+        stats.clear();
+    }
+
+    private Stats statsOf(String key) {
+        String prefix = prefixOf(key);
+        Stats result = stats.get(prefix);
+        if (result == null) {
+            result = stats.computeIfAbsent(prefix, k -> new Stats());
+        }
+        return result;
+    }
+
+    // key 的前缀，即最后一个 ':' 及之前的部分，没有 ':' 时为空字符串
+    static String prefixOf(String key) {
+        int index = key.lastIndexOf(':');
+        return index < 0 ? "" : key.substring(0, index + 1);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | bytes[offset + 3] & 0xFF;
+    }
+
+    /**
+     * 单个 key 前缀的压缩统计
+     */
+    public static class Stats {
+        private final LongAdder compressed = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder decompressed = new LongAdder();
+        private final LongAdder rawBytes = new LongAdder();
+        private final LongAdder storedBytes = new LongAdder();
+        private final LongAdder compressNanos = new LongAdder();
+        private final LongAdder decompressNanos = new LongAdder();
+
+        /**
+         * 按压缩格式存储的次数
+         *
+         * @return
+         */
+        public long getCompressed() {
+            return compressed.sum();
+        }
+
+        /**
+         * 超过阈值但压缩效果不明显、按原样存储的次数
+         *
+         * @return
+         */
+        public long getSkipped() {
+            return skipped.sum();
+        }
+
+        public long getDecompressed() {
+            return decompressed.sum();
+        }
+
+        /**
+         * 压缩前的总字节数，只包括按压缩格式存储的数据
+         *
+         * @return
+         */
+        public long getRawBytes() {
+            return rawBytes.sum();
+        }
+
+        /**
+         * 压缩后的总字节数，包括头部
+         *
+         * @return
+         */
+        public long getStoredBytes() {
+            return storedBytes.sum();
+        }
+
+        /**
+         * 压缩率，即压缩后与压缩前的字节数之比
+         *
+         * @return 没有压缩过时返回 1
+         */
+        public double getRatio() {
+            long raw = getRawBytes();
+            return raw == 0 ? 1 : (double) getStoredBytes() / raw;
+        }
+
+        /**
+         * 压缩的总耗时，包括压缩效果不明显的情况
+         *
+         * @return 毫秒
+         */
+        public double getCompressMillis() {
+            return compressNanos.sum() / 1e6;
+        }
+
+        /**
+         * 解压的总耗时
+         *
+         * @return 毫秒
+         */
+        public double getDecompressMillis() {
+            return decompressNanos.sum() / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return "compressed=" + getCompressed() +
+                    ", skipped=" + getSkipped() +
+                    ", decompressed=" + getDecompressed() +
+                    ", rawBytes=" + getRawBytes() +
+                    ", storedBytes=" + getStoredBytes() +
+                    ", ratio=" + String.format("%.3f", getRatio()) +
+                    ", compressMillis=" + String.format("%.3f", getCompressMillis()) +
+                    ", decompressMillis=" + String.format("%.3f", getDecompressMillis());
+        }
+    }
+}
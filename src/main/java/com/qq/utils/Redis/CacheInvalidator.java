@@ -0,0 +1,385 @@
+package com.qq.utils.Redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 根据数据变更事件主动失效 {@link CacheClient} 中的缓存
+ * <p>
+ * 1) 事件来自一个或多个 {@link InvalidationSource}，也可以直接调用 {@link #invalidate}；
+ * <br>
+ * 2) 事件先放入待处理集合，每隔 window 毫秒统一处理一次，窗口内同一个 key 的重复事件只处理一次，
+ * 待处理数量达到 maxBatchSize 时提前处理；
+ * <br>
+ * 3) 同一个前缀的 key 通过 pipeline 批量处理，默认直接删除，
+ * 通过 {@link #registerRefresh} 注册了批量查询方法的前缀则查询数据库后按注册的存储方式写入新数据，数据已不存在时删除，
+ * 查询或写入失败时整批删除；
+ * <br>
+ * 4) 删除和刷新都会通知所有节点删除本地缓存，并删除紧凑空值缓存中的记录。
+ * <p>
+ * 缓存能够及时失效后，可以适当延长缓存的过期时间来提高命中率。
+ * <p>
+ * 注意：{@link CacheClient#queryWithLogicalExpire} 使用的前缀必须以 {@link StorageMode#LOGICAL_EXPIRE} 注册，
+ * 该方法在 key 不存在时直接返回 null、不查询数据库，直接删除会使数据在下次预热前一直查询不到；
+ * 注册后只有数据库中已不存在的数据才会被删除。
+ */
+public class CacheInvalidator {
+    private final static Logger log = LoggerFactory.getLogger(CacheInvalidator.class);
+
+    /**
+     * 刷新缓存时的存储方式，需要与查询该前缀时使用的方法一致
+     */
+    public enum StorageMode {
+        /**
+         * 普通缓存，对应 {@link CacheClient#queryWithPassThrough}、{@link CacheClient#queryWithMutex} 等方法
+         */
+        PLAIN,
+        /**
+         * 逻辑过期缓存，对应 {@link CacheClient#queryWithLogicalExpire} 和 {@link CacheClient#queryWithEarlyRefresh}
+         */
+        LOGICAL_EXPIRE,
+        /**
+         * 带软过期时间的缓存，对应带 staleTime 参数的 {@link CacheClient#queryWithPassThrough}
+         */
+        STALE_WHILE_REVALIDATE
+    }
+
+    private final CacheClient cacheClient;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final Map<String, Refresher> refreshers = new ConcurrentHashMap<>();
+    private final List<InvalidationSource> sources = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService flusher;
+    // 窗口内待处理的 id，按前缀分组，以及等待这批事件处理完成的调用方，由 this 加锁保护
+    private Map<String, Set<String>> pending = new HashMap<>();
+    private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+    private int pendingCount;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder refreshed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * 使用默认配置：合并窗口 100 毫秒，每批最多 1000 个 key
+     *
+     * @param cacheClient
+     */
+    public CacheInvalidator(CacheClient cacheClient) {
+        this(cacheClient, 100, 1000);
+    }
+
+    /**
+     * @param cacheClient
+     * @param windowMillis 合并窗口（毫秒）
+     * @param maxBatchSize 每个 pipeline 最多处理的 key 数量，待处理数量达到该值时提前处理
+     */
+    public CacheInvalidator(CacheClient cacheClient, long windowMillis, int maxBatchSize) {
+        if (windowMillis <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("windowMillis 和 maxBatchSize 必须大于0");
+        }
+        this.cacheClient = cacheClient;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-invalidator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 指定前缀的数据变更后查询数据库并刷新普通缓存，而不是直接删除
+     *
+     * @param keyPrefix  redis 中缓存的 key 前缀
+     * @param bulkLoader 批量查询数据库的回调函数，入参为变更的 id，返回 id 与数据的映射，不存在的 id 不需要放入
+     * @param time       缓存过期时间
+     * @param unit       缓存过期时间单位
+     */
+    public void registerRefresh(String keyPrefix, Function<Collection<String>, Map<String, ?>> bulkLoader,
+                                long time, TimeUnit unit) {
+        registerRefresh(keyPrefix, StorageMode.PLAIN, bulkLoader, time, 0, unit);
+    }
+
+    /**
+     * 指定前缀的数据变更后查询数据库并按指定的存储方式刷新缓存，而不是直接删除
+     *
+     * @param keyPrefix  redis 中缓存的 key 前缀
+     * @param mode       存储方式
+     * @param bulkLoader 批量查询数据库的回调函数，入参为变更的 id，返回 id 与数据的映射，不存在的 id 不需要放入
+     * @param time       缓存过期时间，逻辑过期和软过期方式为对应的逻辑过期时间
+     * @param staleTime  软过期后仍可以返回旧数据的时间，只用于 {@link StorageMode#STALE_WHILE_REVALIDATE}
+     * @param unit       时间单位
+     */
+    public void registerRefresh(String keyPrefix, StorageMode mode,
+                                Function<Collection<String>, Map<String, ?>> bulkLoader,
+                                long time, long staleTime, TimeUnit unit) {
+        if (mode == null) {
+            throw new IllegalArgumentException("mode 不能为空");
+        }
+        refreshers.put(keyPrefix, new Refresher(mode, bulkLoader, time, staleTime, unit));
+    }
+
+    /**
+     * 启动事件来源，收到的事件由当前对象处理
+     *
+     * @param source 事件来源
+     */
+    public void addSource(InvalidationSource source) {
+        sources.add(source);
+        source.start(this::invalidate);
+    }
+
+    /**
+     * 数据变更后失效缓存
+     *
+     * @param keyPrefix redis 中缓存的 key 前缀
+     * @param id        数据 id
+     */
+    public void invalidate(String keyPrefix, Object id) {
+        invalidate(Collections.singletonList(new InvalidationEvent(keyPrefix, id)));
+    }
+
+    /**
+     * 批量失效缓存
+     *
+     * @param events 数据变更事件
+     * @return 这批事件所在的批次处理完成（删除或刷新成功）后完成，有 key 失效失败时异常完成，
+     * 可靠的事件来源在它完成后再确认消息
+     */
+    public CompletableFuture<Void> invalidate(List<InvalidationEvent> events) {
+        if (events.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        boolean full;
+        synchronized (this) {
+            waiters.add(done);
+            for (InvalidationEvent event : events) {
+                if (pending.computeIfAbsent(event.getKeyPrefix(), k -> new LinkedHashSet<>()).add(event.getId())) {
+                    pendingCount++;
+                } else {
+                    coalesced.increment();
+                }
+            }
+            full = pendingCount >= maxBatchSize;
+        }
+        received.add(events.size());
+        // 关闭后剩余的事件由 shutdown 处理
+        if (full && !flusher.isShutdown()) {
+            flusher.execute(this::flushQuietly);
+        }
+        return done;
+    }
+
+    /**
+     * 立即处理所有待处理的事件
+     */
+    public void flush() {
+        Map<String, Set<String>> batch;
+        List<CompletableFuture<Void>> batchWaiters;
+        synchronized (this) {
+            if (pendingCount == 0) {
+                return;
+            }
+            batch = pending;
+            batchWaiters = waiters;
+            pending = new HashMap<>();
+            waiters = new ArrayList<>();
+            pendingCount = 0;
+        }
+        boolean success = true;
+        try {
+            for (Map.Entry<String, Set<String>> entry : batch.entrySet()) {
+                List<String> list = new ArrayList<>(entry.getValue());
+                for (int from = 0; from < list.size(); from += maxBatchSize) {
+                    success &= apply(entry.getKey(), list.subList(from, Math.min(from + maxBatchSize, list.size())));
+                }
+            }
+        } finally {
+            for (CompletableFuture<Void> waiter : batchWaiters) {
+                if (success) {
+                    waiter.complete(null);
+                } else {
+                    waiter.completeExceptionally(new IllegalStateException("部分缓存失效失败"));
+                }
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("处理缓存失效事件失败", e);
+        }
+    }
+
+    // 返回是否处理成功
+    private boolean apply(String keyPrefix, List<String> ids) {
+        Refresher refresher = refreshers.get(keyPrefix);
+        if (refresher != null) {
+            try {
+                refresh(refresher, keyPrefix, ids);
+                return true;
+            } catch (Exception e) {
+                // 刷新失败时退化为删除，不能让旧数据一直保留到过期
+                log.warn("刷新缓存失败，改为删除，前缀: {}，key 数量: {}", keyPrefix, ids.size(), e);
+            }
+        }
+        try {
+            cacheClient.deleteAll(keyPrefix, ids);
+            deleted.add(ids.size());
+            return true;
+        } catch (Exception e) {
+            // 失败的 key 由事件来源重试，或依赖缓存的过期时间失效
+            failed.add(ids.size());
+            log.error("失效缓存失败，前缀: {}，key 数量: {}", keyPrefix, ids.size(), e);
+            return false;
+        }
+    }
+
+    private void refresh(Refresher refresher, String keyPrefix, List<String> ids) {
+        Map<String, ?> loaded = refresher.bulkLoader.apply(ids);
+        if (loaded == null) {
+            loaded = Collections.emptyMap();
+        }
+        List<String> missing = new ArrayList<>();
+        Map<String, Object> values = new HashMap<>(loaded.size() * 4 / 3 + 1);
+        for (String id : ids) {
+            Object value = loaded.get(id);
+            if (value == null) {
+                missing.add(id);
+            } else {
+                values.put(id, value);
+            }
+        }
+        refresher.write(cacheClient, keyPrefix, values);
+        // 数据库中已不存在，任何存储方式都直接删除
+        cacheClient.deleteAll(keyPrefix, missing);
+        refreshed.add(values.size());
+        deleted.add(missing.size());
+    }
+
+    /**
+     * 停止所有事件来源，并处理剩余的事件
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (InvalidationSource source : sources) {
+            source.stop();
+        }
+        sources.clear();
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(windowMillis * 10, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    /**
+     * 收到的事件数量
+     *
+     * @return
+     */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * 窗口内重复、被合并掉的事件数量
+     *
+     * @return
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getDeleted() {
+        return deleted.sum();
+    }
+
+    public long getRefreshed() {
+        return refreshed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * 等待处理的 key 数量
+     *
+     * @return
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheInvalidator{" +
+                "received=" + getReceived() +
+                ", coalesced=" + getCoalesced() +
+                ", deleted=" + getDeleted() +
+                ", refreshed=" + getRefreshed() +
+                ", failed=" + getFailed() +
+                ", pending=" + getPendingCount() +
+                '}';
+    }
+
+    private static class Refresher {
+        private final StorageMode mode;
+        private final Function<Collection<String>, Map<String, ?>> bulkLoader;
+        private final long time;
+        private final long staleTime;
+        private final TimeUnit unit;
+
+        Refresher(StorageMode mode, Function<Collection<String>, Map<String, ?>> bulkLoader,
+                  long time, long staleTime, TimeUnit unit) {
+            this.mode = mode;
+            this.bulkLoader = bulkLoader;
+            this.time = time;
+            this.staleTime = staleTime;
+            this.unit = unit;
+        }
+
+        // 按存储方式写入，写入方法都会通知所有节点删除本地缓存
+        void write(CacheClient cacheClient, String keyPrefix, Map<String, Object> values) {
+            switch (mode) {
+                case LOGICAL_EXPIRE:
+                    Map<String, Object> keyed = new HashMap<>(values.size() * 4 / 3 + 1);
+                    values.forEach((id, value) -> keyed.put(keyPrefix + id, value));
+                    cacheClient.setAllWithLogicalExpire(keyed, time, 0, unit);
+                    break;
+                case STALE_WHILE_REVALIDATE:
+                    cacheClient.setAllWithStaleTime(keyPrefix, values, time, staleTime, unit);
+                    break;
+                default:
+                    cacheClient.setAll(keyPrefix, values, time, unit);
+            }
+        }
+    }
+}
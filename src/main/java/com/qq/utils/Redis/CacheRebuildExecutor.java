@@ -0,0 +1,217 @@
+package com.qq.utils.Redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存重建线程池
+ * <p>
+ * 代替 CacheClient 中写死的 Executors.newFixedThreadPool(10)：
+ * <br>
+ * 1) 队列有界，队列满时按 {@link RejectPolicy} 处理，大量 key 同时过期时不会无限堆积任务撑爆内存；
+ * <br>
+ * 2) 同一个 key 已经在队列中或正在执行时，不会重复提交；
+ * <br>
+ * 3) 任务中的异常会记录日志并计数，不会被 Future 吞掉；
+ * <br>
+ * 4) 支持优雅关闭，并提供队列长度、重建耗时、失败次数等统计数据。
+ */
+public class CacheRebuildExecutor {
+    private final static Logger log = LoggerFactory.getLogger(CacheRebuildExecutor.class);
+
+    /**
+     * 队列满时的处理方式
+     */
+    public enum RejectPolicy {
+        /**
+         * 丢弃本次重建，调用方继续返回旧数据，等下一次请求再触发
+         */
+        DISCARD,
+        /**
+         * 由提交任务的线程直接执行，会阻塞当前请求
+         */
+        CALLER_RUNS
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final RejectPolicy rejectPolicy;
+    // 已提交但未执行完成的 key
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder totalCostMillis = new LongAdder();
+    private final AtomicLong maxCostMillis = new AtomicLong();
+
+    /**
+     * @param threads       线程数
+     * @param queueCapacity 队列容量
+     * @param rejectPolicy  队列满时的处理方式
+     */
+    public CacheRebuildExecutor(int threads, int queueCapacity, RejectPolicy rejectPolicy) {
+        this(new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new RebuildThreadFactory()), rejectPolicy);
+    }
+
+    /**
+     * 使用自定义的线程池，线程池的拒绝策略会被替换为 AbortPolicy，由本类按 rejectPolicy 处理
+     *
+     * @param executor     线程池，应当使用有界队列
+     * @param rejectPolicy 队列满时的处理方式
+     */
+    public CacheRebuildExecutor(ThreadPoolExecutor executor, RejectPolicy rejectPolicy) {
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        this.executor = executor;
+        this.rejectPolicy = rejectPolicy;
+    }
+
+    /**
+     * 提交重建任务
+     *
+     * @param key  缓存 key，同一个 key 同时只会有一个任务
+     * @param task 重建任务
+     * @return true 任务已提交或已执行，false 任务重复或被丢弃，调用方需要自行清理（例如释放锁）
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        Runnable wrapped = () -> run(key, task);
+        try {
+            executor.execute(wrapped);
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            if (rejectPolicy == RejectPolicy.CALLER_RUNS && !executor.isShutdown()) {
+                submitted.increment();
+                wrapped.run();
+                return true;
+            }
+            pendingKeys.remove(key);
+            log.warn("缓存重建队列已满，丢弃重建任务，key: {}", key);
+            return false;
+        }
+    }
+
+    private void run(String key, Runnable task) {
+        long start = System.currentTimeMillis();
+        try {
+            task.run();
+            completed.increment();
+        } catch (Throwable e) {
+            failed.increment();
+            log.error("缓存重建失败，key: {}", key, e);
+        } finally {
+            pendingKeys.remove(key);
+            long cost = System.currentTimeMillis() - start;
+            totalCostMillis.add(cost);
+            maxCostMillis.accumulateAndGet(cost, Math::max);
+        }
+    }
+
+    /**
+     * 优雅关闭：不再接收新任务，等待队列中的任务执行完毕，超时后强制中断
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     * @return true 所有任务都已执行完毕
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeout, unit)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.warn("缓存重建线程池关闭超时，丢弃剩余任务: {}", executor.shutdownNow().size());
+        return false;
+    }
+
+    //============================metrics=============================
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+
+    /**
+     * 平均重建耗时（毫秒）
+     *
+     * @return
+     */
+    public double getAvgCostMillis() {
+        long count = completed.sum() + failed.sum();
+        return count == 0 ? 0 : (double) totalCostMillis.sum() / count;
+    }
+
+    public long getMaxCostMillis() {
+        return maxCostMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CacheRebuildExecutor{" +
+                "queueSize=" + getQueueSize() +
+                ", active=" + getActiveCount() +
+                ", submitted=" + getSubmitted() +
+                ", completed=" + getCompleted() +
+                ", failed=" + getFailed() +
+                ", rejected=" + getRejected() +
+                ", deduplicated=" + getDeduplicated() +
+                ", avgCostMillis=" + getAvgCostMillis() +
+                ", maxCostMillis=" + getMaxCostMillis() +
+                '}';
+    }
+
+    private static class RebuildThreadFactory implements ThreadFactory {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "cache-rebuild-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
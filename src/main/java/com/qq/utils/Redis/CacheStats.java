@@ -0,0 +1,133 @@
+package com.qq.utils.Redis;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存命中统计
+ * <p>
+ * 分别统计本地一级缓存（L1）和 Redis 二级缓存（L2）的命中/未命中次数，
+ * 计数器使用 LongAdder，高并发下写入开销很小。
+ * <br>
+ * 只有开启了 {@link NearCache} 时才会统计 L1 的数据。
+ */
+public class CacheStats {
+    private final LongAdder l1Hits = new LongAdder();
+    private final LongAdder l1Misses = new LongAdder();
+    private final LongAdder l2Hits = new LongAdder();
+    private final LongAdder l2Misses = new LongAdder();
+    private final LongAdder bloomRejects = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+
+    void recordL1(boolean hit) {
+        (hit ? l1Hits : l1Misses).increment();
+    }
+
+    void recordL2(boolean hit) {
+        (hit ? l2Hits : l2Misses).increment();
+    }
+
+    void recordBloomReject() {
+        bloomRejects.increment();
+    }
+
+    void recordStale() {
+        staleHits.increment();
+    }
+
+    void recordNegativeHits(long count) {
+        negativeHits.add(count);
+    }
+
+    public long getL1Hits() {
+        return l1Hits.sum();
+    }
+
+    public long getL1Misses() {
+        return l1Misses.sum();
+    }
+
+    public long getL2Hits() {
+        return l2Hits.sum();
+    }
+
+    public long getL2Misses() {
+        return l2Misses.sum();
+    }
+
+    /**
+     * 被布隆过滤器直接拦截的请求数
+     *
+     * @return
+     */
+    public long getBloomRejects() {
+        return bloomRejects.sum();
+    }
+
+    /**
+     * 软过期后返回旧数据的次数，包含在 L2 命中次数中
+     *
+     * @return
+     */
+    public long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    /**
+     * 命中 {@link NegativeCache} 的次数，此时 redis 中没有空值 key，计入 L2 未命中次数
+     *
+     * @return
+     */
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    /**
+     * L1 命中率
+     *
+     * @return 0~1 之间的命中率，没有访问时返回 0
+     */
+    public double getL1HitRate() {
+        return rate(getL1Hits(), getL1Misses());
+    }
+
+    /**
+     * L2 命中率
+     *
+     * @return 0~1 之间的命中率，没有访问时返回 0
+     */
+    public double getL2HitRate() {
+        return rate(getL2Hits(), getL2Misses());
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void reset() {
+        l1Hits.reset();
+        l1Misses.reset();
+        l2Hits.reset();
+        l2Misses.reset();
+        bloomRejects.reset();
+        staleHits.reset();
+        negativeHits.reset();
+    }
+
+    private static double rate(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "l1Hits=" + getL1Hits() +
+                ", l1Misses=" + getL1Misses() +
+                ", l2Hits=" + getL2Hits() +
+                ", l2Misses=" + getL2Misses() +
+                ", bloomRejects=" + getBloomRejects() +
+                ", staleHits=" + getStaleHits() +
+                ", negativeHits=" + getNegativeHits() +
+                '}';
+    }
+}
@@ -0,0 +1,190 @@
+package com.qq.utils.Redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 热点数据预热，配合 {@link CacheClient#queryWithLogicalExpire} 使用
+ * <p>
+ * 逻辑过期方案要求热点数据提前写入 Redis，逐条调用 setWithLogicalExpire 时每条数据一次网络往返，
+ * 数据量大时非常慢。这里的做法是：
+ * <br>
+ * 1) 调用线程从数据源中按批次读取数据，数据源可以是游标、分页查询等，不需要一次性加载到内存；
+ * <br>
+ * 2) 每个批次交给线程池并行序列化，并通过一次 pipeline 写入 Redis；
+ * <br>
+ * 3) 同时处理中的批次数有上限，数据源读取速度超过写入速度时调用线程会等待，内存占用有界；
+ * <br>
+ * 4) 每写完一个批次回调一次进度，结束后返回总数量、耗时和吞吐量。
+ */
+public class CacheWarmer {
+    private final static Logger log = LoggerFactory.getLogger(CacheWarmer.class);
+
+    private final CacheClient cacheClient;
+    private final int batchSize;
+    private final int parallelism;
+
+    /**
+     * 进度回调
+     */
+    public interface ProgressListener {
+        /**
+         * 每写完一个批次回调一次，可能在多个线程中并发调用
+         *
+         * @param written       已写入的数量
+         * @param elapsedMillis 已用时间
+         */
+        void onProgress(long written, long elapsedMillis);
+    }
+
+    /**
+     * 使用默认配置：每批 500 条，并行度为 CPU 核数
+     *
+     * @param cacheClient
+     */
+    public CacheWarmer(CacheClient cacheClient) {
+        this(cacheClient, 500, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param cacheClient
+     * @param batchSize   每个 pipeline 批次的数据量
+     * @param parallelism 并行处理的批次数
+     */
+    public CacheWarmer(CacheClient cacheClient, int batchSize, int parallelism) {
+        if (batchSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("batchSize 和 parallelism 必须大于0");
+        }
+        this.cacheClient = cacheClient;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 预热数据
+     *
+     * @param keyPrefix    redis 中缓存的 key 前缀
+     * @param source       数据源
+     * @param idGetter     从数据中获取 id
+     * @param time         逻辑过期时间
+     * @param spreadWindow 逻辑过期时间的打散窗口，0 表示不打散
+     * @param unit         时间单位
+     * @param listener     进度回调，可以为 null
+     * @param <T>
+     * @return 预热结果
+     */
+    public <T> Result warmUp(String keyPrefix, Iterator<T> source, Function<T, ?> idGetter,
+                             long time, long spreadWindow, TimeUnit unit, ProgressListener listener) {
+        long start = System.currentTimeMillis();
+        AtomicLong written = new AtomicLong();
+        AtomicInteger failedBatches = new AtomicInteger();
+        // 限制同时处理中的批次数，包括排队中的
+        Semaphore permits = new Semaphore(parallelism * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "cache-warmer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            while (source.hasNext()) {
+                Map<String, T> batch = new LinkedHashMap<>(batchSize * 4 / 3 + 1);
+                while (batch.size() < batchSize && source.hasNext()) {
+                    T entity = source.next();
+                    batch.put(keyPrefix + idGetter.apply(entity), entity);
+                }
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        cacheClient.setAllWithLogicalExpire(batch, time, spreadWindow, unit);
+                        long total = written.addAndGet(batch.size());
+                        if (listener != null) {
+                            listener.onProgress(total, System.currentTimeMillis() - start);
+                        }
+                    } catch (Exception e) {
+                        failedBatches.incrementAndGet();
+                        log.error("缓存预热批次写入失败，数量: {}", batch.size(), e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            // 等待所有批次完成
+            permits.acquire(parallelism * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("缓存预热被中断");
+        } finally {
+            executor.shutdownNow();
+        }
+        Result result = new Result(written.get(), failedBatches.get(), System.currentTimeMillis() - start);
+        log.info("缓存预热完成，前缀: {}，{}", keyPrefix, result);
+        return result;
+    }
+
+    /**
+     * 预热结果
+     */
+    public static class Result {
+        private final long count;
+        private final int failedBatches;
+        private final long elapsedMillis;
+
+        Result(long count, int failedBatches, long elapsedMillis) {
+            this.count = count;
+            this.failedBatches = failedBatches;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * 成功写入的数量
+         *
+         * @return
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * 写入失败的批次数
+         *
+         * @return
+         */
+        public int getFailedBatches() {
+            return failedBatches;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * 吞吐量（条/秒）
+         *
+         * @return
+         */
+        public double getThroughput() {
+            return elapsedMillis == 0 ? count : count * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "count=" + count +
+                    ", failedBatches=" + failedBatches +
+                    ", elapsedMillis=" + elapsedMillis +
+                    ", throughput=" + String.format("%.1f", getThroughput()) +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.qq.utils.Redis;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 热点 key 统计
+ * <p>
+ * 精确统计每个 key 的访问次数需要的内存与 key 的数量成正比，这里使用 Count-Min Sketch + 候选集合：
+ * <br>
+ * 1) Count-Min Sketch 是 depth 行、width 列的计数器，每个 key 在每一行中通过哈希映射到一个计数器，
+ * 访问时这 depth 个计数器都加 1，估计值取其中的最小值，只会高估不会低估，内存固定；
+ * <br>
+ * 2) 估计值最大的 K 个 key 保存在并发的候选集合中，已在集合中的 key 通过 CAS 更新计数，不加锁，
+ * 只有估计值超过集合中最小值的新 key 才加锁替换，绝大多数访问只有一次哈希和 depth 次原子自增；
+ * <br>
+ * 3) 排序只在调用 {@link #topK()} 时进行；
+ * <br>
+ * 4) 调用 {@link #decay()} 时所有计数减半，使统计结果偏向最近的访问。
+ */
+public class HotKeySketch {
+    private static final int DEPTH = 4;
+
+    private final int width;
+    private final int topK;
+    private final AtomicLongArray counters;
+    // 候选 key，新增和删除由 this 加锁保护，计数通过 CAS 更新
+    private final Map<ByteKey, Tracked> index = new ConcurrentHashMap<>();
+    // 进入候选集合需要超过的估计值，集合未满时为 0；已有计数只增不减，这里可能偏小，加锁后会再次比较
+    private volatile long threshold;
+
+    /**
+     * @param topK  保留的热点 key 数量
+     * @param width 每行的计数器数量，会向上取整为 2 的幂，越大误差越小
+     */
+    public HotKeySketch(int topK, int width) {
+        if (topK <= 0 || width <= 0) {
+            throw new IllegalArgumentException("topK 和 width 必须大于0");
+        }
+        this.topK = topK;
+        this.width = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+        this.counters = new AtomicLongArray(DEPTH * this.width);
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key 序列化后的 key
+     */
+    public void add(byte[] key) {
+        long hash = MurmurHash.hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int column = (h1 + i * h2) & (width - 1);
+            estimate = Math.min(estimate, counters.incrementAndGet(i * width + column));
+        }
+        if (estimate <= threshold) {
+            return;
+        }
+        ByteKey probe = new ByteKey(key, hash);
+        Tracked node = index.get(probe);
+        if (node != null) {
+            node.raise(estimate);
+        } else {
+            admit(probe, estimate);
+        }
+    }
+
+    // 新 key 进入候选集合，集合已满时替换计数最小的 key
+    private synchronized void admit(ByteKey probe, long estimate) {
+        Tracked node = index.get(probe);
+        if (node != null) {
+            node.raise(estimate);
+            return;
+        }
+        if (index.size() >= topK) {
+            Tracked min = min();
+            if (estimate <= min.count.get()) {
+                threshold = min.count.get();
+                return;
+            }
+            index.remove(min.key);
+        }
+        ByteKey key = probe.copy();
+        index.put(key, new Tracked(key, estimate));
+        updateThreshold();
+    }
+
+    private Tracked min() {
+        Tracked min = null;
+        for (Tracked node : index.values()) {
+            if (min == null || node.count.get() < min.count.get()) {
+                min = node;
+            }
+        }
+        return min;
+    }
+
+    private void updateThreshold() {
+        threshold = index.size() < topK ? 0 : min().count.get();
+    }
+
+    /**
+     * 当前的热点 key，按访问次数从大到小排列
+     *
+     * @return 访问次数是估计值
+     */
+    public List<HotKey> topK() {
+        List<HotKey> result = new ArrayList<>(index.size());
+        for (Tracked node : index.values()) {
+            result.add(new HotKey(node.name, node.count.get()));
+        }
+        result.sort((a, b) -> Long.compare(b.count, a.count));
+        return result.size() > topK ? new ArrayList<>(result.subList(0, topK)) : result;
+    }
+
+    /**
+     * 所有计数减半，定期调用可以让很久以前的热点逐渐退出
+     */
+    public synchronized void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            long value;
+            do {
+                value = counters.get(i);
+            } while (value != 0 && !counters.compareAndSet(i, value, value >>> 1));
+        }
+        index.values().removeIf(node -> node.count.updateAndGet(count -> count >>> 1) == 0);
+        updateThreshold();
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        index.clear();
+        threshold = 0;
+    }
+
+    // 候选 key 的计数，只记录最大的估计值
+    private static class Tracked {
+        private final ByteKey key;
+        private final String name;
+        private final AtomicLong count;
+
+        Tracked(ByteKey key, long count) {
+            this.key = key;
+            this.name = new String(key.bytes, StandardCharsets.UTF_8);
+            this.count = new AtomicLong(count);
+        }
+
+        void raise(long estimate) {
+            long current;
+            do {
+                current = count.get();
+            } while (estimate > current && !count.compareAndSet(current, estimate));
+        }
+    }
+
+    // 以序列化后的 key 作为 map 的 key，查询时直接包装调用方的数组，不复制也不解码
+    private static class ByteKey {
+        private final byte[] bytes;
+        private final int hash;
+
+        ByteKey(byte[] bytes, long hash64) {
+            this.bytes = bytes;
+            this.hash = (int) (hash64 ^ (hash64 >>> 32));
+        }
+
+        private ByteKey(byte[] bytes, int hash) {
+            this.bytes = bytes;
+            this.hash = hash;
+        }
+
+        ByteKey copy() {
+            return new ByteKey(bytes.clone(), hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof ByteKey && Arrays.equals(bytes, ((ByteKey) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 热点 key 及其估计的访问次数
+     */
+    public static class HotKey {
+        private final String key;
+        private final long count;
+
+        HotKey(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.qq.utils.Redis;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link RedisIdWorker} 在当前进程内的运行统计
+ * <p>
+ * 1) 按业务前缀统计生成的 id 数量，以及最近若干秒的平均生成速率（个/秒）；
+ * <br>
+ * 2) 记录访问 Redis 的耗时直方图，号段模式下只有租用号段时才会访问 Redis。
+ * <p>
+ * 这里只统计当前节点，整个集群每天的生成数量使用 {@link RedisIdWorker#dailyCounts} 从 Redis 读取。
+ */
+public class IdStats {
+    /**
+     * 速率统计保留的秒数
+     */
+    static final int WINDOW_SECONDS = 60;
+
+    private final RateCounter total = new RateCounter();
+    private final ConcurrentHashMap<String, RateCounter> prefixes = new ConcurrentHashMap<>();
+    private final LatencyHistogram redisLatency = new LatencyHistogram();
+
+    void recordIssued(String keyPrefix, long count) {
+        long second = System.currentTimeMillis() / 1000;
+        total.add(second, count);
+        RateCounter counter = prefixes.get(keyPrefix);
+        if (counter == null) {
+            counter = prefixes.computeIfAbsent(keyPrefix, k -> new RateCounter());
+        }
+        counter.add(second, count);
+    }
+
+    void recordRedis(long nanos) {
+        redisLatency.recordNanos(nanos);
+    }
+
+    /**
+     * 当前进程生成的 id 总数
+     *
+     * @return
+     */
+    public long getIssued() {
+        return total.total.sum();
+    }
+
+    /**
+     * 当前进程为某个业务前缀生成的 id 数量
+     *
+     * @param keyPrefix 业务前缀
+     * @return
+     */
+    public long getIssued(String keyPrefix) {
+        RateCounter counter = prefixes.get(keyPrefix);
+        return counter == null ? 0 : counter.total.sum();
+    }
+
+    /**
+     * 最近 seconds 秒（不含当前这一秒）的平均生成速率
+     *
+     * @param seconds 1 ~ 59
+     * @return 个/秒
+     */
+    public double getIdsPerSecond(int seconds) {
+        return total.rate(seconds);
+    }
+
+    /**
+     * 某个业务前缀最近 seconds 秒（不含当前这一秒）的平均生成速率
+     *
+     * @param keyPrefix 业务前缀
+     * @param seconds   1 ~ 59
+     * @return 个/秒
+     */
+    public double getIdsPerSecond(String keyPrefix, int seconds) {
+        RateCounter counter = prefixes.get(keyPrefix);
+        return counter == null ? 0 : counter.rate(seconds);
+    }
+
+    /**
+     * 出现过的业务前缀
+     *
+     * @return
+     */
+    public Set<String> getPrefixes() {
+        return prefixes.keySet();
+    }
+
+    /**
+     * 访问 Redis 的耗时
+     *
+     * @return
+     */
+    public LatencyHistogram getRedisLatency() {
+        return redisLatency;
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void reset() {
+        total.reset();
+        prefixes.clear();
+        redisLatency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "IdStats{" +
+                "issued=" + getIssued() +
+                ", idsPerSecond=" + String.format("%.1f", getIdsPerSecond(10)) +
+                ", redisLatency=" + redisLatency +
+                '}';
+    }
+
+    /**
+     * 总数 + 最近 {@link #WINDOW_SECONDS} 秒每秒的数量，每秒一个槽位，槽位按秒数取模循环使用
+     */
+    private static class RateCounter {
+        private final LongAdder total = new LongAdder();
+        private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+        private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+
+        void add(long second, long count) {
+            total.add(count);
+            int slot = (int) (second % WINDOW_SECONDS);
+            long slotSecond = seconds.get(slot);
+            if (slotSecond != second) {
+                // 槽位属于更早的一秒，由抢到的线程清零，并发时可能丢失少量计数
+                if (slotSecond < second && seconds.compareAndSet(slot, slotSecond, second)) {
+                    counts.set(slot, 0);
+                } else if (seconds.get(slot) != second) {
+                    return;
+                }
+            }
+            counts.addAndGet(slot, count);
+        }
+
+        double rate(int window) {
+            if (window <= 0 || window >= WINDOW_SECONDS) {
+                throw new IllegalArgumentException("统计窗口必须在 1 ~ " + (WINDOW_SECONDS - 1) + " 秒之间");
+            }
+            long now = System.currentTimeMillis() / 1000;
+            long sum = 0;
+            for (long second = now - window; second < now; second++) {
+                int slot = (int) (second % WINDOW_SECONDS);
+                if (seconds.get(slot) == second) {
+                    sum += counts.get(slot);
+                }
+            }
+            return (double) sum / window;
+        }
+
+        void reset() {
+            total.reset();
+            for (int i = 0; i < WINDOW_SECONDS; i++) {
+                seconds.set(i, 0);
+                counts.set(i, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.qq.utils.Redis;
+
+/**
+ * 全局唯一 id 生成器
+ *
+ * @see RedisIdWorker 基于 Redis 按天自增，可以统计每天的生成数量
+ * @see SnowflakeIdWorker 本地雪花算法，不依赖网络
+ */
+public interface IdWorker {
+
+    /**
+     * 生成下一个 id
+     *
+     * @param keyPrefix 业务前缀，不需要区分业务的实现可以忽略
+     * @return id
+     */
+    long nextId(String keyPrefix);
+}
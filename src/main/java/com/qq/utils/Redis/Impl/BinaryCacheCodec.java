@@ -0,0 +1,560 @@
+package com.qq.utils.Redis.Impl;
+
+import cn.hutool.json.JSONUtil;
+import com.qq.utils.Redis.CacheCodec;
+import com.qq.utils.Redis.RedisData;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制编解码器
+ * <p>
+ * 按类的字段结构（schema）依次写入字段值，不写字段名：
+ * <br>
+ * 1) 字段按名称排序，schema 按类缓存，只在第一次使用时反射解析；
+ * <br>
+ * 2) 整数使用变长编码（zigzag + varint），字符串使用 长度 + UTF-8；
+ * <br>
+ * 3) 嵌套的 Java Bean 递归写入，集合、Map、数组等其他类型退化为 json 字符串；
+ * <br>
+ * 4) 每个 Bean 前写入 4 字节的 schema 指纹，类的字段变化后读取旧数据会直接报错，
+ * 修改缓存对象的字段时需要同时更换 key 前缀或清理旧缓存；
+ * <br>
+ * 5) 每个非 null 的值前写入 1 字节的类型标识。实际类型与字段的声明类型一致时只有这 1 个字节；
+ * 不一致时（例如子类、声明为 Number 的 Integer），Bean 和枚举写入实际的类名，其他基本数据写入 1 字节的数据种类，
+ * 根对象没有声明类型，Bean 和枚举总是写入类名。集合、Map 等 json 数据按声明类型读取，
+ * 声明为 Bean 或基本数据的字段中放入 json 数据会在序列化时报错。
+ * <p>
+ * 存储格式：
+ * <br>
+ * 普通数据：1 字节标识(0xB1) + 数据
+ * <br>
+ * 逻辑过期数据：1 字节标识(0xB2) + 8 字节过期时间戳(毫秒) + 4 字节重建耗时(毫秒，-1 表示未知) + 数据，
+ * 过期时间位于固定位置，可以不解析数据直接读取。
+ * <p>
+ * Bean 需要有无参构造器。
+ */
+public class BinaryCacheCodec implements CacheCodec {
+    private static final byte MAGIC = (byte) 0xB1;
+    private static final byte MAGIC_LOGICAL = (byte) 0xB2;
+
+    // 值前的类型标识，0 表示 null
+    // 按声明类型读取
+    private static final int TAG_DECLARED = 1;
+    // 之后是实际的类名
+    private static final int TAG_CLASS = 2;
+    // 之后是 1 字节的数据种类
+    private static final int TAG_KIND = 3;
+
+    private final ConcurrentHashMap<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Class<?>> classes = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] encode(Object value) {
+        Output out = new Output();
+        out.writeByte(MAGIC);
+        writeRoot(out, value);
+        return out.toByteArray();
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        Input in = new Input(bytes);
+        checkMagic(in.readByte(), MAGIC);
+        return type.cast(readRoot(in, type));
+    }
+
+    @Override
+    public byte[] encodeLogical(RedisData redisData) {
+        Output out = new Output();
+        out.writeByte(MAGIC_LOGICAL);
+        out.writeFixedLong(toMillis(redisData.getExpireTime()));
+        Long rebuildCost = redisData.getRebuildCost();
+        out.writeFixedInt(rebuildCost == null ? -1 : (int) Math.min(rebuildCost, Integer.MAX_VALUE));
+        writeRoot(out, redisData.getData());
+        return out.toByteArray();
+    }
+
+    @Override
+    public <R> RedisData decodeLogical(byte[] bytes, Class<R> type) {
+        Input in = new Input(bytes);
+        checkMagic(in.readByte(), MAGIC_LOGICAL);
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(toLocalDateTime(in.readFixedLong()));
+        int rebuildCost = in.readFixedInt();
+        redisData.setRebuildCost(rebuildCost < 0 ? null : (long) rebuildCost);
+        redisData.setData(readRoot(in, type));
+        return redisData;
+    }
+
+    /**
+     * 只读取逻辑过期时间，不解析数据
+     *
+     * @param bytes {@link #encodeLogical} 序列化后的字节
+     * @return 逻辑过期时间
+     */
+    public LocalDateTime readExpireTime(byte[] bytes) {
+        Input in = new Input(bytes);
+        checkMagic(in.readByte(), MAGIC_LOGICAL);
+        return toLocalDateTime(in.readFixedLong());
+    }
+
+    private static void checkMagic(byte actual, byte expected) {
+        if (actual != expected) {
+            throw new IllegalArgumentException("不是 BinaryCacheCodec 序列化的数据，标识: " + actual);
+        }
+    }
+
+    // 与 LocalDateTime.now() 的时区保持一致
+    private static long toMillis(LocalDateTime time) {
+        return time == null ? Long.MIN_VALUE : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return millis == Long.MIN_VALUE ? null
+                : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    //============================schema=============================
+
+    // 根对象的声明类型在读取时才知道，按 Object 处理
+    private void writeRoot(Output out, Object value) {
+        if (value == null) {
+            out.writeByte(0);
+            return;
+        }
+        writeTyped(out, Object.class, value);
+    }
+
+    private Object readRoot(Input in, Class<?> type) {
+        int tag = in.readByte();
+        if (tag == 0) {
+            return null;
+        }
+        return readTyped(in, tag, type, type);
+    }
+
+    // 写入类型标识和值，value 不能为 null
+    private void writeTyped(Output out, Class<?> declared, Object value) {
+        Class<?> type = value instanceof Enum ? ((Enum<?>) value).getDeclaringClass() : value.getClass();
+        Kind declaredKind = kindOf(declared);
+        if (type == declared || declaredKind != Kind.BEAN && declaredKind != Kind.ENUM && declaredKind != Kind.JSON
+                && declared.isInstance(value)) {
+            out.writeByte(TAG_DECLARED);
+            writeValue(out, declaredKind, value);
+            return;
+        }
+        Kind kind = kindOf(type);
+        switch (kind) {
+            case JSON:
+                if (declaredKind != Kind.JSON) {
+                    throw new IllegalArgumentException(type.getName() + " 不能按 " + declared.getName()
+                            + " 序列化，请使用 JsonCacheCodec");
+                }
+                out.writeByte(TAG_DECLARED);
+                break;
+            case BEAN:
+            case ENUM:
+                out.writeByte(TAG_CLASS);
+                out.writeString(type.getName());
+                break;
+            default:
+                out.writeByte(TAG_KIND);
+                out.writeByte(kind.ordinal());
+        }
+        writeValue(out, kind, value);
+    }
+
+    private Object readTyped(Input in, int tag, Class<?> declared, Type genericType) {
+        switch (tag) {
+            case TAG_DECLARED:
+                return readValue(in, kindOf(declared), declared, genericType);
+            case TAG_CLASS:
+                Class<?> type = resolve(in.readString(), declared);
+                return readValue(in, kindOf(type), type, type);
+            case TAG_KIND:
+                // 基本数据的读取不依赖类型
+                return readValue(in, Kind.values()[in.readByte()], Object.class, Object.class);
+            default:
+                throw new IllegalStateException("不是 BinaryCacheCodec 序列化的数据，类型标识: " + tag);
+        }
+    }
+
+    // 只加载声明类型的子类，不执行类的初始化
+    private Class<?> resolve(String name, Class<?> declared) {
+        Class<?> type = classes.computeIfAbsent(name, BinaryCacheCodec::loadClass);
+        if (!declared.isAssignableFrom(type)) {
+            throw new IllegalStateException("缓存数据的类型 " + name + " 不是 " + declared.getName() + " 的子类");
+        }
+        return type;
+    }
+
+    private static Class<?> loadClass(String name) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try {
+            return Class.forName(name, false, loader != null ? loader : BinaryCacheCodec.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("缓存数据的类型 " + name + " 不存在，请清理旧缓存", e);
+        }
+    }
+
+    private void writeValue(Output out, Kind kind, Object value) {
+        switch (kind) {
+            case BOOLEAN:
+                out.writeByte((Boolean) value ? 1 : 0);
+                break;
+            case BYTE:
+                out.writeByte((Byte) value);
+                break;
+            case SHORT:
+                out.writeVarLong((Short) value);
+                break;
+            case CHAR:
+                out.writeVarLong((Character) value);
+                break;
+            case INT:
+                out.writeVarLong((Integer) value);
+                break;
+            case LONG:
+                out.writeVarLong((Long) value);
+                break;
+            case FLOAT:
+                out.writeFixedInt(Float.floatToIntBits((Float) value));
+                break;
+            case DOUBLE:
+                out.writeFixedLong(Double.doubleToLongBits((Double) value));
+                break;
+            case STRING:
+                out.writeString((String) value);
+                break;
+            case BIG_DECIMAL:
+            case BIG_INTEGER:
+                out.writeString(value.toString());
+                break;
+            case DATE:
+                out.writeVarLong(((Date) value).getTime());
+                break;
+            case LOCAL_DATE_TIME:
+                LocalDateTime dateTime = (LocalDateTime) value;
+                out.writeVarLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+                out.writeVarLong(dateTime.getNano());
+                break;
+            case LOCAL_DATE:
+                out.writeVarLong(((LocalDate) value).toEpochDay());
+                break;
+            case ENUM:
+                out.writeString(((Enum<?>) value).name());
+                break;
+            case BEAN:
+                writeBean(out, value);
+                break;
+            default:
+                out.writeString(JSONUtil.toJsonStr(value));
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readValue(Input in, Kind kind, Class<?> type, Type genericType) {
+        switch (kind) {
+            case BOOLEAN:
+                return in.readByte() != 0;
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return (short) in.readVarLong();
+            case CHAR:
+                return (char) in.readVarLong();
+            case INT:
+                return (int) in.readVarLong();
+            case LONG:
+                return in.readVarLong();
+            case FLOAT:
+                return Float.intBitsToFloat(in.readFixedInt());
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readFixedLong());
+            case STRING:
+                return in.readString();
+            case BIG_DECIMAL:
+                return new BigDecimal(in.readString());
+            case BIG_INTEGER:
+                return new BigInteger(in.readString());
+            case DATE:
+                return new Date(in.readVarLong());
+            case LOCAL_DATE_TIME:
+                long second = in.readVarLong();
+                return LocalDateTime.ofEpochSecond(second, (int) in.readVarLong(), ZoneOffset.UTC);
+            case LOCAL_DATE:
+                return LocalDate.ofEpochDay(in.readVarLong());
+            case ENUM:
+                return Enum.valueOf((Class<Enum>) type, in.readString());
+            case BEAN:
+                return readBean(in, type);
+            default:
+                return JSONUtil.toBean(in.readString(), genericType, false);
+        }
+    }
+
+    private void writeBean(Output out, Object bean) {
+        Schema schema = schemaOf(bean.getClass());
+        out.writeFixedInt(schema.fingerprint);
+        try {
+            for (Slot slot : schema.slots) {
+                Object value = slot.field.get(bean);
+                if (slot.primitive) {
+                    writeValue(out, slot.kind, value);
+                } else if (value == null) {
+                    out.writeByte(0);
+                } else {
+                    writeTyped(out, slot.field.getType(), value);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Object readBean(Input in, Class<?> type) {
+        Schema schema = schemaOf(type);
+        int fingerprint = in.readFixedInt();
+        if (fingerprint != schema.fingerprint) {
+            throw new IllegalStateException("缓存数据与类 " + type.getName() + " 的字段结构不一致，请清理旧缓存");
+        }
+        try {
+            Object bean = schema.constructor.newInstance();
+            for (Slot slot : schema.slots) {
+                if (slot.primitive) {
+                    slot.field.set(bean, readValue(in, slot.kind, slot.field.getType(), slot.field.getGenericType()));
+                    continue;
+                }
+                int tag = in.readByte();
+                if (tag != 0) {
+                    slot.field.set(bean, readTyped(in, tag, slot.field.getType(), slot.field.getGenericType()));
+                }
+            }
+            return bean;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Schema schemaOf(Class<?> type) {
+        return schemas.computeIfAbsent(type, Schema::new);
+    }
+
+    private static Kind kindOf(Class<?> type) {
+        if (type == boolean.class || type == Boolean.class) {
+            return Kind.BOOLEAN;
+        } else if (type == byte.class || type == Byte.class) {
+            return Kind.BYTE;
+        } else if (type == short.class || type == Short.class) {
+            return Kind.SHORT;
+        } else if (type == char.class || type == Character.class) {
+            return Kind.CHAR;
+        } else if (type == int.class || type == Integer.class) {
+            return Kind.INT;
+        } else if (type == long.class || type == Long.class) {
+            return Kind.LONG;
+        } else if (type == float.class || type == Float.class) {
+            return Kind.FLOAT;
+        } else if (type == double.class || type == Double.class) {
+            return Kind.DOUBLE;
+        } else if (type == String.class) {
+            return Kind.STRING;
+        } else if (type == BigDecimal.class) {
+            return Kind.BIG_DECIMAL;
+        } else if (type == BigInteger.class) {
+            return Kind.BIG_INTEGER;
+        } else if (type == Date.class) {
+            return Kind.DATE;
+        } else if (type == LocalDateTime.class) {
+            return Kind.LOCAL_DATE_TIME;
+        } else if (type == LocalDate.class) {
+            return Kind.LOCAL_DATE;
+        } else if (type.isEnum()) {
+            return Kind.ENUM;
+        } else if (isBean(type)) {
+            return Kind.BEAN;
+        }
+        return Kind.JSON;
+    }
+
+    private static boolean isBean(Class<?> type) {
+        if (type.isArray() || type.isInterface() || type.isPrimitive() || Modifier.isAbstract(type.getModifiers())) {
+            return false;
+        }
+        String name = type.getName();
+        if (name.startsWith("java.") || name.startsWith("javax.")) {
+            return false;
+        }
+        try {
+            type.getDeclaredConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    // 序号会写入缓存数据，只能在末尾追加
+    private enum Kind {
+        BOOLEAN, BYTE, SHORT, CHAR, INT, LONG, FLOAT, DOUBLE,
+        STRING, BIG_DECIMAL, BIG_INTEGER, DATE, LOCAL_DATE_TIME, LOCAL_DATE, ENUM, BEAN, JSON
+    }
+
+    private static class Slot {
+        private final Field field;
+        private final Kind kind;
+        private final boolean primitive;
+
+        Slot(Field field) {
+            this.field = field;
+            this.kind = kindOf(field.getType());
+            this.primitive = field.getType().isPrimitive();
+        }
+    }
+
+    private static class Schema {
+        private final Constructor<?> constructor;
+        private final Slot[] slots;
+        private final int fingerprint;
+
+        Schema(Class<?> type) {
+            try {
+                constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(type.getName() + " 缺少无参构造器", e);
+            }
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            fields.sort(Comparator.comparing(Field::getName).thenComparing(f -> f.getDeclaringClass().getName()));
+            slots = new Slot[fields.size()];
+            StringBuilder signature = new StringBuilder();
+            for (int i = 0; i < slots.length; i++) {
+                Field field = fields.get(i);
+                slots[i] = new Slot(field);
+                signature.append(field.getName()).append(':').append(field.getType().getName()).append(';');
+            }
+            fingerprint = signature.toString().hashCode();
+        }
+    }
+
+    //============================io=============================
+
+    private static class Output {
+        private byte[] buf = new byte[128];
+        private int pos;
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeFixedInt(int v) {
+            ensure(4);
+            buf[pos++] = (byte) (v >>> 24);
+            buf[pos++] = (byte) (v >>> 16);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        void writeFixedLong(long v) {
+            writeFixedInt((int) (v >>> 32));
+            writeFixedInt((int) v);
+        }
+
+        // zigzag 编码后按 7 位一组写入，小的正负数都只占 1~2 个字节
+        void writeVarLong(long v) {
+            long zigzag = (v << 1) ^ (v >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buf[pos++] = (byte) zigzag;
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static class Input {
+        private final byte[] buf;
+        private int pos;
+
+        Input(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte readByte() {
+            return buf[pos++];
+        }
+
+        int readFixedInt() {
+            return (buf[pos++] & 0xFF) << 24 | (buf[pos++] & 0xFF) << 16 | (buf[pos++] & 0xFF) << 8 | (buf[pos++] & 0xFF);
+        }
+
+        long readFixedLong() {
+            return (long) readFixedInt() << 32 | (readFixedInt() & 0xFFFFFFFFL);
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
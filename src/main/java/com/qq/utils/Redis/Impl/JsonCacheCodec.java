@@ -0,0 +1,43 @@
+package com.qq.utils.Redis.Impl;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.qq.utils.Redis.CacheCodec;
+import com.qq.utils.Redis.RedisData;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * 基于 hutool JSON 的编解码器，CacheClient 的默认实现
+ * <p>
+ * 存储格式为 UTF-8 编码的 json 字符串，可以直接在 redis-cli 中查看。
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+    }
+
+    @Override
+    public byte[] encodeLogical(RedisData redisData) {
+        return encode(redisData);
+    }
+
+    @Override
+    public <R> RedisData decodeLogical(byte[] bytes, Class<R> type) {
+        // 只解析一次 json，再从中分别取出过期时间和数据
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(json.get("expireTime", LocalDateTime.class));
+        redisData.setRebuildCost(json.getLong("rebuildCost"));
+        redisData.setData(json.get("data", type));
+        return redisData;
+    }
+}
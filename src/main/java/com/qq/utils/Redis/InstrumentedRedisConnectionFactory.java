@@ -0,0 +1,190 @@
+package com.qq.utils.Redis;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 记录 Redis 命令统计的连接工厂装饰器
+ * <p>
+ * 将 RedisTemplate / StringRedisTemplate 的连接工厂替换为该类后，{@link RedisUtil}、{@link CacheClient}
+ * 等所有基于这些模板的调用都会被统计，不需要修改业务代码：
+ * <pre>
+ * RedisMetrics metrics = new RedisMetrics();
+ * redisTemplate.setConnectionFactory(new InstrumentedRedisConnectionFactory(lettuceConnectionFactory, metrics));
+ * metrics.startLogging(1, TimeUnit.MINUTES);
+ * </pre>
+ * 实现方式是通过 JDK 动态代理包装 RedisConnection，每个命令额外的开销是两次 System.nanoTime()、
+ * 遍历参数计算字节数以及一次热点 key 统计。
+ * <br>
+ * pipeline 中的命令立即返回，只统计次数和发送的字节数，整个 pipeline 的耗时记录在 closePipeline 上。
+ * 通过 keyCommands() 等方法获取子命令接口后执行的命令不会被统计。
+ */
+public class InstrumentedRedisConnectionFactory implements RedisConnectionFactory {
+    // 不是 Redis 命令的方法
+    private static final Set<String> IGNORED = new HashSet<>(Arrays.asList(
+            "close", "isClosed", "getNativeConnection", "isQueueing", "isPipelined", "openPipeline",
+            "getSentinelConnection", "equals", "hashCode", "toString"));
+    private static final String CLOSE_PIPELINE = "closePipeline";
+
+    private final RedisConnectionFactory delegate;
+    private final RedisMetrics metrics;
+
+    public InstrumentedRedisConnectionFactory(RedisConnectionFactory delegate, RedisMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    public RedisMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        RedisConnection connection = delegate.getConnection();
+        // 集群模式下返回的是集群连接，代理需要保留该接口
+        if (connection instanceof RedisClusterConnection) {
+            return wrap((RedisClusterConnection) connection, RedisClusterConnection.class);
+        }
+        return wrap(connection, RedisConnection.class);
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        return wrap(delegate.getClusterConnection(), RedisClusterConnection.class);
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return delegate.getConvertPipelineAndTxResults();
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        return delegate.getSentinelConnection();
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return delegate.translateExceptionIfPossible(ex);
+    }
+
+    private <T extends RedisConnection> T wrap(T connection, Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new Handler(connection)));
+    }
+
+    private class Handler implements InvocationHandler {
+        private final RedisConnection target;
+
+        Handler(RedisConnection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (IGNORED.contains(name) || name.endsWith("Commands")) {
+                return invoke(method, args);
+            }
+            if (CLOSE_PIPELINE.equals(name)) {
+                return timed(name, null, 0, method, args);
+            }
+            boolean pipelined = target.isPipelined() || target.isQueueing();
+            byte[] key = firstKey(args);
+            long bytesSent = sizeOf(args);
+            if (pipelined) {
+                // pipeline 和事务中的命令只是放入队列，结果在 closePipeline / exec 时返回
+                boolean error = true;
+                try {
+                    Object result = invoke(method, args);
+                    error = false;
+                    return result;
+                } finally {
+                    metrics.record(name, key, -1, bytesSent, 0, error);
+                }
+            }
+            return timed(name, key, bytesSent, method, args);
+        }
+
+        private Object timed(String name, byte[] key, long bytesSent, Method method, Object[] args) throws Throwable {
+            long begin = System.nanoTime();
+            Object result = null;
+            boolean error = true;
+            try {
+                result = invoke(method, args);
+                error = false;
+                return result;
+            } finally {
+                long nanos = System.nanoTime() - begin;
+                metrics.record(name, key, nanos, bytesSent, error ? 0 : sizeOf(result), error);
+            }
+        }
+
+        private Object invoke(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    private static byte[] firstKey(Object[] args) {
+        if (args == null || args.length == 0) {
+            return null;
+        }
+        Object first = args[0];
+        if (first instanceof byte[]) {
+            return (byte[]) first;
+        }
+        if (first instanceof byte[][] && ((byte[][]) first).length > 0) {
+            return ((byte[][]) first)[0];
+        }
+        return null;
+    }
+
+    // 只计算 byte[] 的长度，其他类型的参数和返回值忽略
+    private static long sizeOf(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof Object[]) {
+            long size = 0;
+            for (Object item : (Object[]) value) {
+                size += sizeOf(item);
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = 0;
+            for (Object item : (Collection<?>) value) {
+                size += sizeOf(item);
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+            }
+            return size;
+        }
+        return 0;
+    }
+}
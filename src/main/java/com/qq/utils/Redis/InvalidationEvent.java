@@ -0,0 +1,34 @@
+package com.qq.utils.Redis;
+
+/**
+ * 缓存失效事件，表示 keyPrefix + id 对应的数据已在数据库中变更
+ */
+public class InvalidationEvent {
+    private final String keyPrefix;
+    private final String id;
+
+    /**
+     * @param keyPrefix redis 中缓存的 key 前缀
+     * @param id        数据 id
+     */
+    public InvalidationEvent(String keyPrefix, Object id) {
+        if (keyPrefix == null || id == null) {
+            throw new IllegalArgumentException("keyPrefix 和 id 不能为空");
+        }
+        this.keyPrefix = keyPrefix;
+        this.id = String.valueOf(id);
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return keyPrefix + id;
+    }
+}
@@ -0,0 +1,30 @@
+package com.qq.utils.Redis;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * 缓存失效事件的来源，由 {@link CacheInvalidator} 启动和停止
+ * <p>
+ * 内置实现：
+ * <br>
+ * 1) {@link LocalInvalidationSource}：进程内发布，业务代码更新数据库后直接调用；
+ * <br>
+ * 2) {@link RedisStreamInvalidationSource}：从 Redis Stream 读取，可以由 CDC 工具（例如 Canal、Debezium）写入。
+ */
+public interface InvalidationSource {
+
+    /**
+     * 开始接收事件
+     *
+     * @param sink 事件的处理方，可以在任意线程中调用，每次传入一批事件；
+     *             返回的 future 在这批事件处理完成后完成，需要确认消息的来源应等待它完成后再确认
+     */
+    void start(Function<List<InvalidationEvent>, CompletableFuture<Void>> sink);
+
+    /**
+     * 停止接收事件
+     */
+    void stop();
+}
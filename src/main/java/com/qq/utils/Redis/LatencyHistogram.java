@@ -0,0 +1,143 @@
+package com.qq.utils.Redis;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图
+ * <p>
+ * 以微秒为单位记录耗时，桶的划分方式与 HdrHistogram 类似：每个 2 的幂区间再均分为 8 个子桶，
+ * 小于 8 微秒时每微秒一个桶，相对误差不超过 12.5%，覆盖 0 ~ 2^40 微秒，总共 304 个桶。
+ * <br>
+ * 记录时只做一次位运算和一次原子自增，不加锁、不分配对象，可以放在高频调用路径上。
+ * 统计结果是近似值，读取时其他线程可能仍在写入。
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_MICROS = (1L << MAX_EXPONENT) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时（纳秒），一般为两次 System.nanoTime() 的差值
+     */
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    /**
+     * 记录一次耗时
+     *
+     * @param micros 耗时（微秒）
+     */
+    public void recordMicros(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_MICROS);
+        buckets.incrementAndGet(indexOf(value));
+        count.increment();
+        sumMicros.add(value);
+        maxMicros.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 平均耗时（微秒）
+     *
+     * @return 没有数据时返回 0
+     */
+    public double getMeanMicros() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) sumMicros.sum() / n;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * 百分位耗时（微秒）
+     *
+     * @param percentile 0 ~ 100，例如 99.9
+     * @return 所在桶的上界，没有数据时返回 0
+     */
+    public long getPercentileMicros(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("百分位必须在 0 ~ 100 之间");
+        }
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max((long) Math.ceil(total * percentile / 100), 1);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                // 不超过实际记录到的最大值
+                return Math.min(upperBound(i), getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sumMicros.reset();
+        maxMicros.reset();
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_COUNT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    // 桶内的最大值
+    static long upperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        long sub = index % SUB_COUNT;
+        long lower = (SUB_COUNT + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "count=" + getCount() +
+                ", meanMicros=" + String.format("%.1f", getMeanMicros()) +
+                ", p50=" + getPercentileMicros(50) +
+                ", p90=" + getPercentileMicros(90) +
+                ", p99=" + getPercentileMicros(99) +
+                ", p999=" + getPercentileMicros(99.9) +
+                ", maxMicros=" + getMaxMicros() +
+                '}';
+    }
+}
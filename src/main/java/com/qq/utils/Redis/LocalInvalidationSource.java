@@ -0,0 +1,59 @@
+package com.qq.utils.Redis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * 进程内的缓存失效事件来源
+ * <p>
+ * 数据访问层只依赖该类发布事件，不需要知道缓存如何失效；
+ * 未启动或已停止时发布的事件直接丢弃，此时数据依赖缓存的过期时间失效。
+ */
+public class LocalInvalidationSource implements InvalidationSource {
+    private volatile Function<List<InvalidationEvent>, CompletableFuture<Void>> sink;
+
+    @Override
+    public void start(Function<List<InvalidationEvent>, CompletableFuture<Void>> sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void stop() {
+        this.sink = null;
+    }
+
+    /**
+     * 发布数据变更事件
+     *
+     * @param keyPrefix redis 中缓存的 key 前缀
+     * @param id        数据 id
+     */
+    public void publish(String keyPrefix, Object id) {
+        Function<List<InvalidationEvent>, CompletableFuture<Void>> current = sink;
+        if (current != null) {
+            current.apply(Collections.singletonList(new InvalidationEvent(keyPrefix, id)));
+        }
+    }
+
+    /**
+     * 批量发布数据变更事件
+     *
+     * @param keyPrefix redis 中缓存的 key 前缀
+     * @param ids       数据 id
+     */
+    public void publishAll(String keyPrefix, Collection<?> ids) {
+        Function<List<InvalidationEvent>, CompletableFuture<Void>> current = sink;
+        if (current == null || ids.isEmpty()) {
+            return;
+        }
+        List<InvalidationEvent> events = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            events.add(new InvalidationEvent(keyPrefix, id));
+        }
+        current.apply(events);
+    }
+}
@@ -0,0 +1,172 @@
+package com.qq.utils.Redis;
+
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.util.IdUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内一级缓存（L1），配合 {@link CacheClient} 组成 本地 + Redis 的二级缓存
+ * <p>
+ * 1) 容量有限，超出容量后按 LRU 淘汰；
+ * <br>
+ * 2) 每个条目都有 TTL，应当设置得比 Redis 中的 TTL 短，保证即使错过失效通知，本地数据也只会短暂不一致；
+ * <br>
+ * 3) 某个节点更新缓存时通过 Redis pub/sub 广播 key，所有节点收到后删除本地对应的条目。
+ * <p>
+ * 本地缓存中保存的是反序列化之后的对象，命中时无需再访问 Redis 和解析 json，
+ * 因此调用方不应修改取到的对象。
+ */
+public class NearCache implements MessageListener {
+    private final static Logger log = LoggerFactory.getLogger(NearCache.class);
+
+    /**
+     * 默认的失效通知频道
+     */
+    public static final String DEFAULT_CHANNEL = "cache:invalidate";
+    // 通知内容为 节点id + 分隔符 + key，收到自己发出的通知时直接忽略
+    private static final char SEPARATOR = '#';
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final LRUCache<String, Object> cache;
+    private final String channel;
+    private final String nodeId = IdUtil.fastSimpleUUID();
+
+    /**
+     * @param stringRedisTemplate 用于发布失效通知
+     * @param capacity            最大条目数
+     * @param ttl                 本地条目过期时间
+     * @param unit                过期时间单位
+     */
+    public NearCache(StringRedisTemplate stringRedisTemplate, int capacity, long ttl, TimeUnit unit) {
+        this(stringRedisTemplate, capacity, ttl, unit, DEFAULT_CHANNEL);
+    }
+
+    /**
+     * @param stringRedisTemplate 用于发布失效通知
+     * @param capacity            最大条目数
+     * @param ttl                 本地条目过期时间
+     * @param unit                过期时间单位
+     * @param channel             失效通知频道，同一组节点需使用相同的频道
+     */
+    public NearCache(StringRedisTemplate stringRedisTemplate, int capacity, long ttl, TimeUnit unit, String channel) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cache = new LRUCache<>(capacity, unit.toMillis(ttl));
+        this.channel = channel;
+    }
+
+    /**
+     * 将当前实例注册到监听容器中，接收其他节点的失效通知
+     *
+     * @param container 监听容器，需由调用方负责启动和关闭
+     */
+    public void subscribe(RedisMessageListenerContainer container) {
+        container.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    /**
+     * 获取本地缓存
+     *
+     * @param key  缓存 key
+     * @param type 数据类型
+     * @param <R>
+     * @return 未命中或类型不匹配时返回 null
+     */
+    public <R> R get(String key, Class<R> type) {
+        Object value = cache.get(key, false);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    /**
+     * 放入本地缓存
+     *
+     * @param key   缓存 key
+     * @param value 数据，为 null 时不缓存
+     */
+    public void put(String key, Object value) {
+        if (value != null) {
+            cache.put(key, value);
+        }
+    }
+
+    /**
+     * 删除本节点的本地缓存，并通知其他节点删除
+     *
+     * @param key 缓存 key
+     */
+    public void invalidate(String key) {
+        cache.remove(key);
+        try {
+            stringRedisTemplate.convertAndSend(channel, nodeId + SEPARATOR + key);
+        } catch (Exception e) {
+            // 通知失败时其他节点的数据最多在本地 TTL 后失效
+            log.warn("发布缓存失效通知失败，key: {}", key, e);
+        }
+    }
+
+    /**
+     * 批量删除本地缓存，并通过一次 pipeline 通知其他节点删除
+     *
+     * @param keys 缓存 key
+     */
+    public void invalidateAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(cache::remove);
+        try {
+            RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+            byte[] rawChannel = serializer.serialize(channel);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String key : keys) {
+                    connection.publish(rawChannel, serializer.serialize(nodeId + SEPARATOR + key));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("批量发布缓存失效通知失败，key 数量: {}", keys.size(), e);
+        }
+    }
+
+    /**
+     * 仅删除本节点的本地缓存
+     *
+     * @param key 缓存 key
+     */
+    public void evict(String key) {
+        cache.remove(key);
+    }
+
+    /**
+     * 清空本节点的本地缓存
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(SEPARATOR);
+        if (index < 0) {
+            evict(body);
+        } else if (!nodeId.equals(body.substring(0, index))) {
+            evict(body.substring(index + 1));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.qq.utils.Redis;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 紧凑存储的空值缓存，代替 {@link CacheClient} 中每个不存在的 id 一个 String 类型的空值 key
+ * <p>
+ * 每个空值 key 除了 key 本身还有 redisObject、字典项、过期字典项等固定开销，
+ * 随机 id 攻击时大量空值 key 会占用很多内存。这里将同一个前缀下不存在的 id 作为 hash 的 field 存储：
+ * <br>
+ * 1) 按写入时间分桶，桶宽等于空值过期时间 ttl，每个桶的 key 在桶结束后再过 ttl 整体过期，
+ * 用桶的过期模拟 field 的过期（HEXPIRE），每个 id 被认为不存在的时间在 ttl ~ 2 * ttl 之间；
+ * <br>
+ * 2) 每个桶按 id 的哈希再分为 shards 个 hash，分散到集群的不同 slot 上，
+ * 同时使每个 hash 尽量保持 listpack 编码（hash-max-listpack-entries），此时每个 id 只占 id 本身加几个字节；
+ * <br>
+ * 3) 判断时通过一次 pipeline 查询当前桶和上一个桶，更早的桶已经过期。
+ * <p>
+ * key 格式：cache:null:{keyPrefix}{桶序号}:{分片}
+ */
+public class NegativeCache {
+    private static final String KEY_PREFIX = "cache:null:";
+    private static final byte[] EMPTY = new byte[0];
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final int shards;
+    private final long bucketMillis;
+
+    /**
+     * @param stringRedisTemplate
+     * @param shards              每个桶的分片数，预计每个桶的 id 数量除以分片数最好不超过 128
+     * @param ttl                 空值过期时间
+     * @param unit                时间单位
+     */
+    public NegativeCache(StringRedisTemplate stringRedisTemplate, int shards, long ttl, TimeUnit unit) {
+        if (shards <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException("shards 和 ttl 必须大于0");
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.shards = shards;
+        this.bucketMillis = unit.toMillis(ttl);
+    }
+
+    /**
+     * 记录不存在的 id
+     *
+     * @param keyPrefix 缓存的 key 前缀
+     * @param ids       不存在的 id
+     */
+    public void add(String keyPrefix, Collection<?> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        long bucket = System.currentTimeMillis() / bucketMillis;
+        // 同一个分片的 id 合并为一条 HMSET
+        Map<Integer, Map<byte[], byte[]>> byShard = new LinkedHashMap<>();
+        for (Object id : ids) {
+            String field = String.valueOf(id);
+            byShard.computeIfAbsent(shardOf(field), k -> new HashMap<>()).put(raw(field), EMPTY);
+        }
+        long expireAt = (bucket + 2) * bucketMillis;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byShard.forEach((shard, fields) -> {
+                byte[] key = bucketKey(keyPrefix, bucket, shard);
+                connection.hMSet(key, fields);
+                connection.pExpireAt(key, expireAt);
+            });
+            return null;
+        });
+    }
+
+    /**
+     * 记录不存在的 id
+     *
+     * @param keyPrefix 缓存的 key 前缀
+     * @param id        不存在的 id
+     */
+    public void add(String keyPrefix, Object id) {
+        add(keyPrefix, Collections.singletonList(id));
+    }
+
+    /**
+     * 判断 id 是否已知不存在
+     *
+     * @param keyPrefix 缓存的 key 前缀
+     * @param id        数据 id
+     * @return
+     */
+    public boolean contains(String keyPrefix, Object id) {
+        return !containsAll(keyPrefix, Collections.singletonList(id)).isEmpty();
+    }
+
+    /**
+     * 批量判断 id 是否已知不存在，通过一次 pipeline 查询
+     *
+     * @param keyPrefix 缓存的 key 前缀
+     * @param ids       数据 id
+     * @param <ID>
+     * @return 已知不存在的 id
+     */
+    public <ID> Set<ID> containsAll(String keyPrefix, List<ID> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        long bucket = System.currentTimeMillis() / bucketMillis;
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : ids) {
+                String field = String.valueOf(id);
+                int shard = shardOf(field);
+                byte[] rawField = raw(field);
+                connection.hExists(bucketKey(keyPrefix, bucket, shard), rawField);
+                connection.hExists(bucketKey(keyPrefix, bucket - 1, shard), rawField);
+            }
+            return null;
+        });
+        Set<ID> missing = new HashSet<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (Boolean.TRUE.equals(results.get(2 * i)) || Boolean.TRUE.equals(results.get(2 * i + 1))) {
+                missing.add(ids.get(i));
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * 数据新增后删除对应的空值记录
+     *
+     * @param keyPrefix 缓存的 key 前缀
+     * @param ids       数据 id
+     */
+    public void remove(String keyPrefix, Collection<?> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        long bucket = System.currentTimeMillis() / bucketMillis;
+        List<String> fields = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            fields.add(String.valueOf(id));
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String field : fields) {
+                int shard = shardOf(field);
+                byte[] rawField = raw(field);
+                connection.hDel(bucketKey(keyPrefix, bucket, shard), rawField);
+                connection.hDel(bucketKey(keyPrefix, bucket - 1, shard), rawField);
+            }
+            return null;
+        });
+    }
+
+    private int shardOf(String field) {
+        int h = field.hashCode();
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % shards;
+    }
+
+    private static byte[] bucketKey(String keyPrefix, long bucket, int shard) {
+        return raw(KEY_PREFIX + keyPrefix + bucket + ":" + shard);
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
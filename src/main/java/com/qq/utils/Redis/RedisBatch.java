@@ -0,0 +1,764 @@
+package com.qq.utils.Redis;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 一批通过 pipeline 一次发送的 Redis 命令，配合 {@link RedisUtil#pipeline} 使用
+ * <p>
+ * 方法名与 {@link RedisUtil} 保持一致，调用时只是把命令加入队列并返回一个 {@link Response}，
+ * pipeline 执行完成后才能从 Response 中取得结果。序列化方式与 RedisUtil 使用的 RedisTemplate 相同。
+ * <p>
+ * 参数在加入队列时就完成序列化，序列化失败只会导致当前方法抛出异常，不影响同一批次的其他命令。
+ * <p>
+ * 带过期时间的写入方法与 RedisUtil 使用同一个 Lua 脚本，pipeline 中无法处理 NOSCRIPT，因此通过 EVAL 发送脚本内容。
+ * <p>
+ * 注意：pipeline 只是减少网络往返，不保证原子性，其他客户端的命令可能穿插在这批命令之间执行。
+ */
+public class RedisBatch {
+    private final RedisSerializer<Object> keySerializer;
+    private final RedisSerializer<Object> valueSerializer;
+    private final RedisSerializer<Object> hashKeySerializer;
+    private final RedisSerializer<Object> hashValueSerializer;
+    private final RedisScriptRegistry scriptRegistry;
+    private final List<Op<?>> ops = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    RedisBatch(RedisTemplate<String, Object> redisTemplate, RedisScriptRegistry scriptRegistry) {
+        this.scriptRegistry = scriptRegistry;
+        this.keySerializer = (RedisSerializer<Object>) redisTemplate.getKeySerializer();
+        this.valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        this.hashKeySerializer = (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+        this.hashValueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+    }
+
+    /**
+     * 一条命令的结果，pipeline 执行完成后可用
+     *
+     * @param <T>
+     */
+    public static class Response<T> {
+        private boolean done;
+        private T value;
+        private RuntimeException error;
+
+        /**
+         * 获取结果
+         *
+         * @return 结果
+         * @throws IllegalStateException pipeline 还没有执行或者执行失败
+         * @throws RuntimeException      这条命令执行失败，例如 key 的类型不正确
+         */
+        public T get() {
+            if (!done) {
+                throw new IllegalStateException("pipeline 未执行或执行失败");
+            }
+            if (error != null) {
+                throw error;
+            }
+            return value;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        void complete(T value) {
+            this.value = value;
+            this.done = true;
+        }
+
+        void fail(RuntimeException error) {
+            this.error = error;
+            this.done = true;
+        }
+    }
+
+    //=============================common============================
+
+    /**
+     * 指定缓存失效时间
+     *
+     * @param key  键
+     * @param time 时间(秒)
+     * @return
+     */
+    public Response<Boolean> expire(String key, long time) {
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.expire(rawKey, time), Boolean.class::cast);
+    }
+
+    /**
+     * 根据key 获取过期时间
+     *
+     * @param key 键
+     * @return 时间(秒) -1 代表永久有效，-2 代表 key 不存在
+     */
+    public Response<Long> getExpire(String key) {
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.ttl(rawKey, TimeUnit.SECONDS), Long.class::cast);
+    }
+
+    /**
+     * 判断key是否存在
+     *
+     * @param key 键
+     * @return
+     */
+    public Response<Boolean> hasKey(String key) {
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.exists(rawKey), Boolean.class::cast);
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key 可以传一个值 或多个
+     * @return 删除的个数
+     */
+    public Response<Long> del(String... key) {
+        byte[][] keys = new byte[key.length][];
+        for (int i = 0; i < key.length; i++) {
+            keys[i] = rawKey(key[i]);
+        }
+        return queue(c -> c.del(keys), Long.class::cast);
+    }
+
+    //============================String=============================
+
+    /**
+     * 普通缓存获取
+     *
+     * @param key 键
+     * @return
+     */
+    public Response<Object> get(String key) {
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.get(rawKey), this::value);
+    }
+
+    /**
+     * 普通缓存放入
+     *
+     * @param key   键
+     * @param value 值
+     * @return
+     */
+    public Response<Boolean> set(String key, Object value) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawValue = rawValue(value);
+        return queue(c -> c.set(rawKey, rawValue), Boolean.class::cast);
+    }
+
+    /**
+     * 普通缓存放入并设置时间，通过 SET EX 一条命令完成
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) 小于等于0 将设置无限期
+     * @return
+     */
+    public Response<Boolean> set(String key, Object value, long time) {
+        if (time <= 0) {
+            return set(key, value);
+        }
+        byte[] rawKey = rawKey(key);
+        byte[] rawValue = rawValue(value);
+        return queue(c -> c.set(rawKey, rawValue, Expiration.seconds(time),
+                RedisStringCommands.SetOption.upsert()), Boolean.class::cast);
+    }
+
+    /**
+     * 递增
+     *
+     * @param key   键
+     * @param delta 要增加几
+     * @return 递增后的值
+     */
+    public Response<Long> incr(String key, long delta) {
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.incrBy(rawKey, delta), Long.class::cast);
+    }
+
+    //================================Map=================================
+
+    /**
+     * HashGet
+     *
+     * @param key  键
+     * @param item 项
+     * @return
+     */
+    public Response<Object> hget(String key, String item) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawItem = rawHashKey(item);
+        return queue(c -> c.hGet(rawKey, rawItem), this::hashValue);
+    }
+
+    /**
+     * 获取hashKey对应的所有键值
+     *
+     * @param key 键
+     * @return
+     */
+    public Response<Map<Object, Object>> hmget(String key) {
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.hGetAll(rawKey), this::hashEntries);
+    }
+
+    /**
+     * 向一张hash表中放入数据,如果不存在将创建
+     *
+     * @param key   键
+     * @param item  项
+     * @param value 值
+     * @return 是否新增了该项
+     */
+    public Response<Boolean> hset(String key, String item, Object value) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawItem = rawHashKey(item);
+        byte[] rawValue = rawHashValue(value);
+        return queue(c -> c.hSet(rawKey, rawItem, rawValue), Boolean.class::cast);
+    }
+
+    /**
+     * HashSet
+     *
+     * @param key 键
+     * @param map 对应多个键值
+     * @return 执行成功时为 true
+     */
+    public Response<Boolean> hmset(String key, Map<String, Object> map) {
+        Map<byte[], byte[]> raw = new LinkedHashMap<>(map.size() * 4 / 3 + 1);
+        map.forEach((item, value) -> raw.put(rawHashKey(item), rawHashValue(value)));
+        byte[] rawKey = rawKey(key);
+        // HMSET 是状态回复，pipeline 的结果中没有它的位置
+        return queueStatus(c -> c.hMSet(rawKey, raw));
+    }
+
+    /**
+     * 删除hash表中的值
+     *
+     * @param key  键
+     * @param item 项 可以使多个
+     * @return 删除的个数
+     */
+    public Response<Long> hdel(String key, Object... item) {
+        byte[][] items = new byte[item.length][];
+        for (int i = 0; i < item.length; i++) {
+            items[i] = rawHashKey(item[i]);
+        }
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.hDel(rawKey, items), Long.class::cast);
+    }
+
+    /**
+     * HashSet 并设置时间
+     *
+     * @param key  键
+     * @param map  对应多个键值
+     * @param time 时间(秒) 小于等于0 不设置
+     * @return 执行成功时为 true
+     */
+    public Response<Boolean> hmset(String key, Map<String, Object> map, long time) {
+        if (time <= 0) {
+            return hmset(key, map);
+        }
+        List<byte[]> args = new ArrayList<>(map.size() * 2 + 1);
+        args.add(rawNumber(time));
+        map.forEach((item, value) -> {
+            args.add(rawHashKey(item));
+            args.add(rawHashValue(value));
+        });
+        return eval(RedisScriptRegistry.HMSET_EX, key, args, raw -> Boolean.TRUE);
+    }
+
+    /**
+     * 向一张hash表中放入数据并设置时间,如果不存在将创建
+     *
+     * @param key   键
+     * @param item  项
+     * @param value 值
+     * @param time  时间(秒) 注意:如果已存在的hash表有时间,这里将会替换原有的时间
+     * @return 执行成功时为 true
+     */
+    public Response<Boolean> hset(String key, String item, Object value, long time) {
+        if (time <= 0) {
+            return hset(key, item, value);
+        }
+        List<byte[]> args = new ArrayList<>(3);
+        args.add(rawNumber(time));
+        args.add(rawHashKey(item));
+        args.add(rawHashValue(value));
+        return eval(RedisScriptRegistry.HMSET_EX, key, args, raw -> Boolean.TRUE);
+    }
+
+    /**
+     * 项不存在时才放入hash表
+     *
+     * @param key   键
+     * @param item  项
+     * @param value 值
+     * @param time  时间(秒) 写入成功时设置hash表的过期时间,小于等于0不设置
+     * @return true 写入成功 false 项已存在
+     */
+    public Response<Boolean> hsetIfAbsent(String key, String item, Object value, long time) {
+        List<byte[]> args = new ArrayList<>(3);
+        args.add(rawNumber(time));
+        args.add(rawHashKey(item));
+        args.add(rawHashValue(value));
+        return eval(RedisScriptRegistry.HSET_IF_ABSENT_EX, key, args, raw -> ((Long) raw) == 1);
+    }
+
+    /**
+     * 判断hash表中是否有该项的值
+     *
+     * @param key  键
+     * @param item 项
+     * @return
+     */
+    public Response<Boolean> hHasKey(String key, String item) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawItem = rawHashKey(item);
+        return queue(c -> c.hExists(rawKey, rawItem), Boolean.class::cast);
+    }
+
+    /**
+     * hash递增 如果不存在,就会创建一个 并把新增后的值返回
+     *
+     * @param key  键
+     * @param item 项
+     * @param by   要增加几，传负数时为递减
+     * @return
+     */
+    public Response<Double> hincr(String key, String item, double by) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawItem = rawHashKey(item);
+        return queue(c -> c.hIncrBy(rawKey, rawItem, by), Double.class::cast);
+    }
+
+    //============================set=============================
+
+    /**
+     * 根据key获取Set中的所有值
+     *
+     * @param key 键
+     * @return
+     */
+    public Response<Set<Object>> sGet(String key) {
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.sMembers(rawKey), raw -> values((Collection<?>) raw, new LinkedHashSet<>()));
+    }
+
+    /**
+     * 根据value从一个set中查询,是否存在
+     *
+     * @param key   键
+     * @param value 值
+     * @return
+     */
+    public Response<Boolean> sHasKey(String key, Object value) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawValue = rawValue(value);
+        return queue(c -> c.sIsMember(rawKey, rawValue), Boolean.class::cast);
+    }
+
+    /**
+     * 将数据放入set缓存
+     *
+     * @param key    键
+     * @param values 值 可以是多个
+     * @return 成功个数
+     */
+    public Response<Long> sSet(String key, Object... values) {
+        byte[][] raw = rawValues(values);
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.sAdd(rawKey, raw), Long.class::cast);
+    }
+
+    /**
+     * 将set数据放入缓存并设置时间
+     *
+     * @param key    键
+     * @param time   时间(秒) 小于等于0 不设置
+     * @param values 值 可以是多个
+     * @return 成功个数
+     */
+    public Response<Long> sSetAndTime(String key, long time, Object... values) {
+        if (time <= 0) {
+            return sSet(key, values);
+        }
+        List<byte[]> args = new ArrayList<>(values.length + 1);
+        args.add(rawNumber(time));
+        for (Object value : values) {
+            args.add(rawValue(value));
+        }
+        return eval(RedisScriptRegistry.SADD_EX, key, args, Long.class::cast);
+    }
+
+    /**
+     * 获取set缓存的长度
+     *
+     * @param key 键
+     * @return
+     */
+    public Response<Long> sGetSetSize(String key) {
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.sCard(rawKey), Long.class::cast);
+    }
+
+    /**
+     * 移除值为value的
+     *
+     * @param key    键
+     * @param values 值 可以是多个
+     * @return 移除的个数
+     */
+    public Response<Long> setRemove(String key, Object... values) {
+        byte[][] raw = rawValues(values);
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.sRem(rawKey, raw), Long.class::cast);
+    }
+
+    //===============================list=================================
+
+    /**
+     * 获取list缓存的内容
+     *
+     * @param key   键
+     * @param start 开始
+     * @param end   结束  0 到 -1代表所有值
+     * @return
+     */
+    public Response<List<Object>> lGet(String key, long start, long end) {
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.lRange(rawKey, start, end), raw -> values((Collection<?>) raw, new ArrayList<>()));
+    }
+
+    /**
+     * 通过索引 获取list中的值
+     *
+     * @param key   键
+     * @param index 索引
+     * @return
+     */
+    public Response<Object> lGetIndex(String key, long index) {
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.lIndex(rawKey, index), this::value);
+    }
+
+    /**
+     * 将list放入缓存
+     *
+     * @param key   键
+     * @param value 值
+     * @return list 的长度
+     */
+    public Response<Long> lSet(String key, Object value) {
+        byte[] raw = rawValue(value);
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.rPush(rawKey, raw), Long.class::cast);
+    }
+
+    /**
+     * 将list放入缓存
+     *
+     * @param key   键
+     * @param value 值
+     * @return list 的长度
+     */
+    public Response<Long> lSet(String key, List<Object> value) {
+        byte[][] raw = rawValues(value.toArray());
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.rPush(rawKey, raw), Long.class::cast);
+    }
+
+    /**
+     * 将list放入缓存并设置时间
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) 小于等于0 不设置
+     * @return list 的长度
+     */
+    public Response<Long> lSet(String key, Object value, long time) {
+        return lSet(key, Collections.singletonList(value), time);
+    }
+
+    /**
+     * 将list放入缓存并设置时间
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) 小于等于0 不设置
+     * @return list 的长度
+     */
+    public Response<Long> lSet(String key, List<Object> value, long time) {
+        if (time <= 0) {
+            return lSet(key, value);
+        }
+        List<byte[]> args = new ArrayList<>(value.size() + 1);
+        args.add(rawNumber(time));
+        for (Object item : value) {
+            args.add(rawValue(item));
+        }
+        return eval(RedisScriptRegistry.RPUSH_EX, key, args, Long.class::cast);
+    }
+
+    /**
+     * 将数据放入list头部,只保留最新的 maxSize 个元素并设置过期时间
+     *
+     * @param key     键
+     * @param maxSize 最大长度
+     * @param time    时间(秒) 小于等于0不设置
+     * @param values  值 可以是多个
+     * @return list 的长度
+     */
+    public Response<Long> lPushBounded(String key, long maxSize, long time, Object... values) {
+        if (maxSize <= 0) {
+            throw new RuntimeException("最大长度必须大于0");
+        }
+        List<byte[]> args = new ArrayList<>(values.length + 2);
+        args.add(rawNumber(time));
+        args.add(rawNumber(maxSize));
+        for (Object value : values) {
+            args.add(rawValue(value));
+        }
+        return eval(RedisScriptRegistry.LPUSH_BOUNDED, key, args, Long.class::cast);
+    }
+
+    /**
+     * 获取list缓存的长度
+     *
+     * @param key 键
+     * @return
+     */
+    public Response<Long> lGetListSize(String key) {
+        byte[] rawKey = rawKey(key);
+        return queue(c -> c.lLen(rawKey), Long.class::cast);
+    }
+
+    /**
+     * 根据索引修改list中的某条数据
+     *
+     * @param key   键
+     * @param index 索引
+     * @param value 值
+     * @return 执行成功时为 true
+     */
+    public Response<Boolean> lUpdateIndex(String key, long index, Object value) {
+        byte[] rawKey = rawKey(key);
+        byte[] raw = rawValue(value);
+        // LSET 是状态回复，pipeline 的结果中没有它的位置
+        return queueStatus(c -> c.lSet(rawKey, index, raw));
+    }
+
+    /**
+     * 移除N个值为value
+     *
+     * @param key   键
+     * @param count 移除多少个
+     * @param value 值
+     * @return 移除的个数
+     */
+    public Response<Long> lRemove(String key, long count, Object value) {
+        byte[] rawKey = rawKey(key);
+        byte[] raw = rawValue(value);
+        return queue(c -> c.lRem(rawKey, count, raw), Long.class::cast);
+    }
+
+    //===============================limit=================================
+
+    /**
+     * 固定窗口限流
+     *
+     * @param key   键
+     * @param limit 窗口内允许的次数
+     * @param time  窗口大小(秒)
+     * @return true 允许 false 超过限制
+     */
+    public Response<Boolean> rateLimit(String key, long limit, long time) {
+        if (time <= 0) {
+            throw new RuntimeException("窗口大小必须大于0");
+        }
+        return eval(RedisScriptRegistry.RATE_LIMIT, key, Collections.singletonList(rawNumber(time)),
+                raw -> ((Long) raw) <= limit);
+    }
+
+    //===============================执行=================================
+
+    int size() {
+        return ops.size();
+    }
+
+    boolean isEmpty() {
+        return ops.isEmpty();
+    }
+
+    /**
+     * 在开启了 pipeline 的连接上发送所有命令
+     */
+    void send(RedisConnection connection) {
+        for (Op<?> op : ops) {
+            op.command.accept(connection);
+        }
+    }
+
+    /**
+     * 将 pipeline 的结果按顺序填入 Response，状态回复的命令在结果中没有位置，直接视为成功
+     *
+     * @param results pipeline 返回的原始结果，失败的命令对应的位置为异常
+     */
+    void complete(List<Object> results) {
+        int i = 0;
+        for (Op<?> op : ops) {
+            if (op.converter == null) {
+                op.completeStatus();
+                continue;
+            }
+            op.complete(i < results.size() ? results.get(i) : null);
+            i++;
+        }
+    }
+
+    private <T> Response<T> queue(Consumer<RedisConnection> command, Function<Object, T> converter) {
+        Op<T> op = new Op<>(command, converter);
+        ops.add(op);
+        return op.response;
+    }
+
+    private Response<Boolean> queueStatus(Consumer<RedisConnection> command) {
+        return queue(command, null);
+    }
+
+    // 通过 EVAL 执行注册表中的脚本，脚本返回整数
+    private <T> Response<T> eval(String script, String key, List<byte[]> args, Function<Object, T> converter) {
+        byte[] body = scriptRegistry.getBody(script);
+        byte[][] keysAndArgs = new byte[args.size() + 1][];
+        keysAndArgs[0] = rawKey(key);
+        for (int i = 0; i < args.size(); i++) {
+            keysAndArgs[i + 1] = args.get(i);
+        }
+        return queue(c -> c.eval(body, ReturnType.INTEGER, 1, keysAndArgs), converter);
+    }
+
+    private static class Op<T> {
+        private final Consumer<RedisConnection> command;
+        private final Function<Object, T> converter;
+        private final Response<T> response = new Response<>();
+
+        Op(Consumer<RedisConnection> command, Function<Object, T> converter) {
+            this.command = command;
+            this.converter = converter;
+        }
+
+        @SuppressWarnings("unchecked")
+        void completeStatus() {
+            response.complete((T) Boolean.TRUE);
+        }
+
+        void complete(Object raw) {
+            if (raw instanceof RuntimeException) {
+                response.fail((RuntimeException) raw);
+                return;
+            }
+            if (raw instanceof Throwable) {
+                response.fail(new IllegalStateException((Throwable) raw));
+                return;
+            }
+            try {
+                response.complete(raw == null ? null : converter.apply(raw));
+            } catch (RuntimeException e) {
+                response.fail(e);
+            }
+        }
+    }
+
+    //============================序列化=============================
+
+    static byte[] serialize(RedisSerializer<Object> serializer, Object value) {
+        if (serializer == null) {
+            if (value instanceof byte[]) {
+                return (byte[]) value;
+            }
+            throw new IllegalStateException("RedisTemplate 没有配置序列化器，只能使用 byte[]");
+        }
+        return serializer.serialize(value);
+    }
+
+    static Object deserialize(RedisSerializer<Object> serializer, Object raw) {
+        // RedisTemplate 执行 pipeline 时可能已经反序列化过
+        if (!(raw instanceof byte[]) || serializer == null) {
+            return raw;
+        }
+        return serializer.deserialize((byte[]) raw);
+    }
+
+    private byte[] rawKey(String key) {
+        return serialize(keySerializer, key);
+    }
+
+    private static byte[] rawNumber(long number) {
+        return String.valueOf(number).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] rawValue(Object value) {
+        return serialize(valueSerializer, value);
+    }
+
+    private byte[][] rawValues(Object[] values) {
+        byte[][] raw = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            raw[i] = rawValue(values[i]);
+        }
+        return raw;
+    }
+
+    private byte[] rawHashKey(Object item) {
+        return serialize(hashKeySerializer, item);
+    }
+
+    private byte[] rawHashValue(Object value) {
+        return serialize(hashValueSerializer, value);
+    }
+
+    private Object value(Object raw) {
+        return deserialize(valueSerializer, raw);
+    }
+
+    private Object hashValue(Object raw) {
+        return deserialize(hashValueSerializer, raw);
+    }
+
+    private <C extends Collection<Object>> C values(Collection<?> raw, C target) {
+        for (Object item : raw) {
+            target.add(value(item));
+        }
+        return target;
+    }
+
+    private Map<Object, Object> hashEntries(Object raw) {
+        Map<?, ?> entries = (Map<?, ?>) raw;
+        Map<Object, Object> result = new LinkedHashMap<>(entries.size() * 4 / 3 + 1);
+        entries.forEach((item, value) ->
+                result.put(deserialize(hashKeySerializer, item), deserialize(hashValueSerializer, value)));
+        return result;
+    }
+}
@@ -3,9 +3,21 @@ package com.qq.utils.Redis;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Redis 实现全局唯一 Id，类似雪花算法
@@ -33,9 +45,14 @@ import java.time.format.DateTimeFormatter;
  * 时间戳：31bit，以秒为单位，可以使用69年
  * <br>
  * 序列号：32bit，秒内的计数器，支持每秒产生2^32个不同ID
+ * <p></p>
+ * 时间戳和计数器 key 的计算：
+ * <br>
+ * 每个业务前缀缓存当天的计数器 key 和它的有效区间，生成 id 时只读取一次 System.currentTimeMillis()
+ * 并与区间比较，不创建 LocalDateTime、不格式化日期、不拼接字符串，跨过零点或时区偏移变化（夏令时）时才重新计算。
  */
 @Component
-public class RedisIdWorker {
+public class RedisIdWorker implements IdWorker {
     /**
      * 开始时间戳
      * 2022-01-01 00:00:00
@@ -45,27 +62,227 @@ public class RedisIdWorker {
      * 序列号的位数，代表每秒内可产生最大序列号，即 2^32 - 1
      */
     private static final int COUNT_BITS = 32;
+    /**
+     * 每个业务前缀每天最多可以生成的 id 数量，计数器按天累加，超过后序列号会溢出到时间戳部分
+     */
+    public static final long MAX_DAILY_COUNT = (1L << COUNT_BITS) - 1;
+    /**
+     * {@link #dailyCounts} 一次最多查询的天数
+     */
+    private static final int MAX_QUERY_DAYS = 3660;
+    /**
+     * 计数器 key 中的日期格式
+     */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
 
     private StringRedisTemplate stringRedisTemplate;
+    private final ZoneRules zoneRules = ZoneId.systemDefault().getRules();
+    // key 前缀 -> 当天的计数器 key
+    private final ConcurrentHashMap<String, DayKey> dayKeys = new ConcurrentHashMap<>();
+    private final IdStats stats = new IdStats();
+    /**
+     * 号段模式的分配器，为 null 时每个 id 都执行一次 INCR
+     */
+    private volatile SegmentIdAllocator segmentAllocator;
 
     public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
     }
 
+    /**
+     * 开启号段模式
+     * <p>
+     * 每个节点一次从 Redis 租用一段序列号在本地分配，生成 id 基本不再访问 Redis，
+     * 代价是同一秒内不同节点生成的 id 不再严格递增，节点重启时未使用的序列号会被浪费。
+     *
+     * @param minStep 号段最小长度
+     * @param maxStep 号段最大长度，号段长度会根据消耗速度在两者之间调整
+     */
+    public void enableSegmentMode(long minStep, long maxStep) {
+        this.segmentAllocator = new SegmentIdAllocator(stringRedisTemplate, minStep, maxStep, stats);
+    }
+
+    /**
+     * 关闭号段模式，已租用但未使用的序列号会被丢弃
+     */
+    public void disableSegmentMode() {
+        this.segmentAllocator = null;
+    }
+
+    @Override
     public long nextId(String keyPrefix) {
         // 1.生成时间戳
-        LocalDateTime now = LocalDateTime.now();
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
-        long timestamp = nowSecond - BEGIN_TIMESTAMP;
+        long nowMillis = System.currentTimeMillis();
+        DayKey dayKey = dayKey(keyPrefix, nowMillis);
+        long timestamp = dayKey.epochSecond(nowMillis) - BEGIN_TIMESTAMP;
 
         // 2.生成序列号
-        // 2.1.获取当前日期，精确到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 2.2.自增长
-        // 采取这种格式的 key，后期方便统计某年某月某天的总量
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        // 采取 icr:前缀:yyyy:MM:dd 格式的 key，后期方便统计某年某月某天的总量
+        String key = dayKey.key;
+        SegmentIdAllocator allocator = segmentAllocator;
+        long count;
+        if (allocator == null) {
+            long begin = System.nanoTime();
+            count = stringRedisTemplate.opsForValue().increment(key);
+            stats.recordRedis(System.nanoTime() - begin);
+        } else {
+            count = allocator.next(keyPrefix, key);
+        }
+        stats.recordIssued(keyPrefix, 1);
 
         // 3.拼接并返回
         return timestamp << COUNT_BITS | count;
     }
+
+    /**
+     * 批量生成 id
+     * <p>
+     * 通过一次 INCRBY 预留整段序列号，时间戳和计数器 key 只计算一次，
+     * 返回的 id 共用同一个时间戳，序列号连续递增。
+     *
+     * @param keyPrefix 业务前缀
+     * @param count     数量
+     * @return 按从小到大排列的 id
+     */
+    public long[] nextIds(String keyPrefix, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("数量必须大于0");
+        }
+        // 1.生成时间戳
+        long nowMillis = System.currentTimeMillis();
+        DayKey dayKey = dayKey(keyPrefix, nowMillis);
+        long timestamp = dayKey.epochSecond(nowMillis) - BEGIN_TIMESTAMP;
+        // 2.一次预留 count 个序列号，返回值为最后一个序列号
+        long begin = System.nanoTime();
+        long end = stringRedisTemplate.opsForValue().increment(dayKey.key, count);
+        stats.recordRedis(System.nanoTime() - begin);
+        stats.recordIssued(keyPrefix, count);
+        // 3.拼接
+        long high = timestamp << COUNT_BITS;
+        long start = end - count + 1;
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = high | (start + i);
+        }
+        return ids;
+    }
+
+    /**
+     * 当前进程内的运行统计
+     *
+     * @return
+     */
+    public IdStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 查询某个业务前缀每天分配的 id 数量，数据来自 Redis 中按天的计数器，包含所有节点
+     * <p>
+     * 未开启号段模式时等于实际生成的 id 数量；开启 {@link #enableSegmentMode} 后计数器按整个号段递增，
+     * 这里返回的是各节点预留的数量，包含号段中未用完、随进程退出或跨天丢弃的部分，会大于实际生成的数量。
+     *
+     * @param keyPrefix 业务前缀
+     * @param from      开始日期（包含）
+     * @param to        结束日期（包含）
+     * @return 日期 -> 数量，按日期排列，没有数据的日期为 0
+     */
+    public Map<LocalDate, Long> dailyCounts(String keyPrefix, LocalDate from, LocalDate to) {
+        return dailyCounts(Collections.singletonList(keyPrefix), from, to).get(keyPrefix);
+    }
+
+    /**
+     * 批量查询多个业务前缀每天分配的 id 数量，所有计数器通过一次 MGET 读取，号段模式下为预留的数量，
+     * 见 {@link #dailyCounts(String, LocalDate, LocalDate)}
+     * <p>
+     * 计数器按天累加，某一天的数量接近 {@link #MAX_DAILY_COUNT} 时序列号即将溢出，
+     * 数量除以 86400 即为当天的平均生成速率（个/秒）。
+     *
+     * @param keyPrefixes 业务前缀
+     * @param from        开始日期（包含）
+     * @param to          结束日期（包含）
+     * @return 业务前缀 -> (日期 -> 数量)
+     */
+    public Map<String, Map<LocalDate, Long>> dailyCounts(Collection<String> keyPrefixes, LocalDate from, LocalDate to) {
+        long days = ChronoUnit.DAYS.between(from, to) + 1;
+        if (days <= 0 || days > MAX_QUERY_DAYS) {
+            throw new IllegalArgumentException("查询的天数必须在 1 ~ " + MAX_QUERY_DAYS + " 之间");
+        }
+        List<String> keys = new ArrayList<>((int) days * keyPrefixes.size());
+        for (String keyPrefix : keyPrefixes) {
+            for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+                keys.add("icr:" + keyPrefix + ":" + date.format(DATE_FORMATTER));
+            }
+        }
+        Map<String, Map<LocalDate, Long>> result = new LinkedHashMap<>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        int i = 0;
+        for (String keyPrefix : keyPrefixes) {
+            Map<LocalDate, Long> counts = new LinkedHashMap<>();
+            for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1), i++) {
+                String value = values == null ? null : values.get(i);
+                counts.put(date, value == null ? 0L : Long.parseLong(value));
+            }
+            result.put(keyPrefix, counts);
+        }
+        return result;
+    }
+
+    // 获取当前时间所在区间的计数器 key，只在跨过区间边界时重新计算
+    private DayKey dayKey(String keyPrefix, long nowMillis) {
+        DayKey dayKey = dayKeys.get(keyPrefix);
+        if (dayKey == null || !dayKey.contains(nowMillis)) {
+            dayKey = newDayKey(keyPrefix, nowMillis);
+            dayKeys.put(keyPrefix, dayKey);
+        }
+        return dayKey;
+    }
+
+    private DayKey newDayKey(String keyPrefix, long nowMillis) {
+        Instant now = Instant.ofEpochMilli(nowMillis);
+        ZoneOffset offset = zoneRules.getOffset(now);
+        LocalDate date = now.atOffset(offset).toLocalDate();
+        long startMillis = date.atStartOfDay().toInstant(offset).toEpochMilli();
+        long endMillis = date.plusDays(1).atStartOfDay().toInstant(offset).toEpochMilli();
+        // 区间内时区偏移保持不变，偏移在当天内发生变化时提前结束区间
+        ZoneOffsetTransition transition = zoneRules.nextTransition(now);
+        if (transition != null) {
+            endMillis = Math.min(endMillis, transition.toEpochSecond() * 1000);
+        }
+        ZoneOffsetTransition previous = zoneRules.previousTransition(now);
+        if (previous != null) {
+            startMillis = Math.max(startMillis, previous.toEpochSecond() * 1000);
+        }
+        String key = "icr:" + keyPrefix + ":" + date.format(DATE_FORMATTER);
+        return new DayKey(key, offset.getTotalSeconds(), startMillis, endMillis);
+    }
+
+    /**
+     * 一段时区偏移不变的时间区间内的计数器 key，不可变，通过替换整个对象更新
+     */
+    private static class DayKey {
+        private final String key;
+        private final long offsetSeconds;
+        private final long startMillis;
+        private final long endMillis;
+
+        DayKey(String key, long offsetSeconds, long startMillis, long endMillis) {
+            this.key = key;
+            this.offsetSeconds = offsetSeconds;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+
+        boolean contains(long nowMillis) {
+            return nowMillis >= startMillis && nowMillis < endMillis;
+        }
+
+        // 与 LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) 结果一致，即把本地时间当作 UTC 时间计算秒数
+        long epochSecond(long nowMillis) {
+            return Math.floorDiv(nowMillis, 1000L) + offsetSeconds;
+        }
+    }
 }
@@ -0,0 +1,217 @@
+package com.qq.utils.Redis;
+
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.IdUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Redis 的分布式锁
+ * <p>
+ * 直接使用 setIfAbsent + delete 的问题：业务执行时间超过锁的过期时间后，锁被自动释放并被其他节点获取，
+ * 之后原持有者执行 delete 会把其他节点的锁删掉。这里的做法是：
+ * <br>
+ * 1) 锁的值为每次加锁生成的唯一 token，释放时通过 Lua 脚本比较 token 后再删除；
+ * <br>
+ * 2) 可以开启看门狗，在持有锁期间每隔 1/3 租期自动续期，业务执行多久锁就持有多久，进程挂掉后锁在租期后自动释放；
+ * <br>
+ * 3) 可以获取单调递增的 fencing token，下游存储可以拒绝 token 比已见过的更小的写入，
+ * 防止锁因 GC 停顿等原因过期后旧持有者继续写入。fencing 计数器是一个永久 key，只应对数量有限的锁使用。
+ * <p>
+ * 使用方式：
+ * <pre>
+ * RedisLock.Lease lease = redisLock.tryLock("lock:order:1", 10, TimeUnit.SECONDS, true);
+ * if (lease != null) {
+ *     try {
+ *         // 业务逻辑
+ *     } finally {
+ *         lease.unlock();
+ *     }
+ * }
+ * </pre>
+ */
+@Component
+public class RedisLock {
+    private final static Logger log = LoggerFactory.getLogger(RedisLock.class);
+
+    // 比较 token 后删除
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    // 比较 token 后续期
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+    // 加锁成功后递增 fencing 计数器，两个 key 在集群模式下需要通过 {hashtag} 落在同一个 slot
+    private static final DefaultRedisScript<Long> LOCK_WITH_FENCE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return redis.call('incr', KEYS[2]) else return 0 end",
+            Long.class);
+    // fencing 计数器的 key 后缀
+    private static final String FENCE_SUFFIX = ":fence";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    // 看门狗线程，用于自动续期
+    private final ScheduledThreadPoolExecutor watchdog;
+
+    public RedisLock(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.watchdog = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "redis-lock-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 尝试获取锁，不阻塞
+     *
+     * @param key       锁的 key
+     * @param leaseTime 租期
+     * @param unit      租期单位
+     * @param watchdog  是否开启看门狗自动续期
+     * @return 获取成功返回锁的凭证，失败返回 null
+     */
+    public Lease tryLock(String key, long leaseTime, TimeUnit unit, boolean watchdog) {
+        String token = IdUtil.fastSimpleUUID();
+        Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(key, token, leaseTime, unit);
+        if (!BooleanUtil.isTrue(success)) {
+            return null;
+        }
+        return newLease(key, token, 0, unit.toMillis(leaseTime), watchdog);
+    }
+
+    /**
+     * 尝试获取锁，并返回 fencing token
+     *
+     * @param key       锁的 key
+     * @param leaseTime 租期
+     * @param unit      租期单位
+     * @param watchdog  是否开启看门狗自动续期
+     * @return 获取成功返回锁的凭证，失败返回 null
+     */
+    public Lease tryLockWithFence(String key, long leaseTime, TimeUnit unit, boolean watchdog) {
+        String token = IdUtil.fastSimpleUUID();
+        long leaseMillis = unit.toMillis(leaseTime);
+        Long fence = stringRedisTemplate.execute(LOCK_WITH_FENCE_SCRIPT, Arrays.asList(key, key + FENCE_SUFFIX),
+                token, String.valueOf(leaseMillis));
+        if (fence == null || fence == 0) {
+            return null;
+        }
+        return newLease(key, token, fence, leaseMillis, watchdog);
+    }
+
+    private Lease newLease(String key, String token, long fencingToken, long leaseMillis, boolean watchdog) {
+        Lease lease = new Lease(key, token, fencingToken);
+        if (watchdog) {
+            long period = Math.max(leaseMillis / 3, 1);
+            lease.renewal = this.watchdog.scheduleAtFixedRate(() -> renew(lease, leaseMillis),
+                    period, period, TimeUnit.MILLISECONDS);
+        }
+        return lease;
+    }
+
+    private void renew(Lease lease, long leaseMillis) {
+        try {
+            Long result = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(lease.key),
+                    lease.token, String.valueOf(leaseMillis));
+            if (result == null || result == 0) {
+                // 锁已经不属于自己，停止续期
+                log.warn("分布式锁已失效，停止续期，key: {}", lease.key);
+                lease.held = false;
+                lease.cancelRenewal();
+            }
+        } catch (Exception e) {
+            // 网络抖动时不停止续期，锁在租期内仍然有效
+            log.warn("分布式锁续期失败，key: {}", lease.key, e);
+        }
+    }
+
+    /**
+     * 停止看门狗线程，已持有的锁将在租期后自动释放
+     */
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * 锁的凭证，只有凭证的持有者才能释放锁
+     */
+    public class Lease implements AutoCloseable {
+        private final String key;
+        private final String token;
+        private final long fencingToken;
+        private volatile boolean held = true;
+        private volatile ScheduledFuture<?> renewal;
+
+        private Lease(String key, String token, long fencingToken) {
+            this.key = key;
+            this.token = token;
+            this.fencingToken = fencingToken;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        /**
+         * fencing token，通过 {@link #tryLockWithFence} 获取时有效，否则为 0
+         *
+         * @return
+         */
+        public long getFencingToken() {
+            return fencingToken;
+        }
+
+        /**
+         * 锁是否仍被持有，续期时发现锁已属于其他节点后变为 false
+         *
+         * @return
+         */
+        public boolean isHeld() {
+            return held;
+        }
+
+        /**
+         * 释放锁，只会删除自己持有的锁，可以重复调用
+         *
+         * @return true 释放成功，false 锁已过期或已被释放
+         */
+        public boolean unlock() {
+            cancelRenewal();
+            if (!held) {
+                return false;
+            }
+            held = false;
+            Long result = stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key), token);
+            return result != null && result > 0;
+        }
+
+        @Override
+        public void close() {
+            unlock();
+        }
+
+        private void cancelRenewal() {
+            ScheduledFuture<?> future = renewal;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.qq.utils.Redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis 命令统计，由 {@link InstrumentedRedisConnectionFactory} 记录
+ * <p>
+ * 按命令统计调用次数、失败次数、耗时直方图、发送和接收的字节数，并通过 {@link HotKeySketch} 统计热点 key。
+ * 可以通过 getter 接入监控系统，也可以调用 {@link #startLogging} 定期输出到日志。
+ */
+public class RedisMetrics {
+    private final static Logger log = LoggerFactory.getLogger(RedisMetrics.class);
+
+    private final ConcurrentHashMap<String, CommandStats> commands = new ConcurrentHashMap<>();
+    private final HotKeySketch hotKeys;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * 使用默认配置：保留前 20 个热点 key
+     */
+    public RedisMetrics() {
+        this(20, 4096);
+    }
+
+    /**
+     * @param topK        保留的热点 key 数量
+     * @param sketchWidth 热点统计每行的计数器数量
+     */
+    public RedisMetrics(int topK, int sketchWidth) {
+        this.hotKeys = new HotKeySketch(topK, sketchWidth);
+    }
+
+    /**
+     * 记录一次命令
+     *
+     * @param command       命令名
+     * @param key           命令操作的第一个 key，没有时为 null
+     * @param nanos         耗时，pipeline 中的命令没有单独的耗时，传入小于 0 的值
+     * @param bytesSent     发送的字节数
+     * @param bytesReceived 接收的字节数
+     * @param error         是否失败
+     */
+    void record(String command, byte[] key, long nanos, long bytesSent, long bytesReceived, boolean error) {
+        CommandStats stats = commands.get(command);
+        if (stats == null) {
+            stats = commands.computeIfAbsent(command, k -> new CommandStats());
+        }
+        stats.calls.increment();
+        if (error) {
+            stats.errors.increment();
+        }
+        if (nanos >= 0) {
+            stats.latency.recordNanos(nanos);
+        }
+        stats.bytesSent.add(bytesSent);
+        stats.bytesReceived.add(bytesReceived);
+        if (key != null) {
+            hotKeys.add(key);
+        }
+    }
+
+    /**
+     * 所有命令的统计，按命令名排序
+     *
+     * @return
+     */
+    public Map<String, CommandStats> getCommands() {
+        return Collections.unmodifiableMap(new TreeMap<>(commands));
+    }
+
+    /**
+     * 某个命令的统计
+     *
+     * @param command 命令名，与 RedisConnection 的方法名相同，例如 get、hGet、evalSha
+     * @return 没有调用过时返回 null
+     */
+    public CommandStats getCommand(String command) {
+        return commands.get(command);
+    }
+
+    /**
+     * 当前的热点 key
+     *
+     * @return 按访问次数从大到小排列
+     */
+    public List<HotKeySketch.HotKey> getHotKeys() {
+        return hotKeys.topK();
+    }
+
+    public HotKeySketch getHotKeySketch() {
+        return hotKeys;
+    }
+
+    /**
+     * 定期将统计数据输出到日志，每次输出后热点 key 的计数减半
+     *
+     * @param period 间隔
+     * @param unit   时间单位
+     */
+    public synchronized void startLogging(long period, TimeUnit unit) {
+        if (reporter != null) {
+            throw new IllegalStateException("已经开启了定期输出");
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            try {
+                log.info("{}", this);
+                hotKeys.decay();
+            } catch (Exception e) {
+                log.error("输出 Redis 统计数据失败", e);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * 停止定期输出
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void reset() {
+        commands.clear();
+        hotKeys.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("RedisMetrics{");
+        getCommands().forEach((command, stats) -> sb.append("\n  ").append(command).append(": ").append(stats));
+        sb.append("\n  hotKeys: ").append(getHotKeys()).append("\n}");
+        return sb.toString();
+    }
+
+    /**
+     * 单个命令的统计
+     */
+    public static class CommandStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getBytesSent() {
+            return bytesSent.sum();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.sum();
+        }
+
+        /**
+         * 耗时，不包括 pipeline 中的命令
+         *
+         * @return
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return "calls=" + getCalls() +
+                    ", errors=" + getErrors() +
+                    ", bytesSent=" + getBytesSent() +
+                    ", bytesReceived=" + getBytesReceived() +
+                    ", p50=" + latency.getPercentileMicros(50) +
+                    "us, p99=" + latency.getPercentileMicros(99) +
+                    "us, max=" + latency.getMaxMicros() + "us";
+        }
+    }
+}
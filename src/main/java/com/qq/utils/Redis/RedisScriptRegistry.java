@@ -0,0 +1,223 @@
+package com.qq.utils.Redis;
+
+import cn.hutool.crypto.SecureUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lua 脚本注册表
+ * <p>
+ * 先判断再写入的复合操作（例如 hHasKey 后 hset）需要多次网络往返，而且在并发下不是原子的，
+ * 改为 Lua 脚本后只需要一次往返。这里统一管理这些脚本：
+ * <br>
+ * 1) 注册时在本地计算脚本的 SHA1，之后只通过 EVALSHA 发送 SHA1，不再发送脚本内容；
+ * <br>
+ * 2) Redis 重启、执行 SCRIPT FLUSH 或者请求落到新的集群节点时会返回 NOSCRIPT，此时改用 EVAL 发送脚本内容执行一次，
+ * EVAL 与 EVALSHA 一样按 key 路由到同一个节点，执行后该节点会缓存脚本，之后的 EVALSHA 不再失败，调用方无感知；
+ * <br>
+ * 3) 内置了 {@link RedisUtil} 使用的几个脚本，参数中 ARGV[1] 统一为过期时间(秒)，小于等于 0 时不设置过期时间。
+ * <p>
+ * 脚本操作的 key 必须全部通过 KEYS 传入，集群模式下这些 key 需要落在同一个 slot。
+ */
+public class RedisScriptRegistry {
+    private final static Logger log = LoggerFactory.getLogger(RedisScriptRegistry.class);
+
+    /**
+     * Lua 脚本中一次 unpack 的参数个数，避免超过 Lua 的栈大小限制，必须是偶数以保证 hash 的键值成对
+     */
+    private static final int UNPACK_BATCH = 1000;
+    private static final String EXPIRE = "if tonumber(ARGV[1]) > 0 then redis.call('EXPIRE', KEYS[1], ARGV[1]) end\n";
+
+    /**
+     * HMSET 并设置过期时间，ARGV[2..] 为成对的项和值，返回 1
+     */
+    public static final String HMSET_EX = "hmsetEx";
+    /**
+     * SADD 并设置过期时间，ARGV[2..] 为值，返回新增的个数
+     */
+    public static final String SADD_EX = "saddEx";
+    /**
+     * RPUSH 并设置过期时间，ARGV[2..] 为值，返回 list 的长度
+     */
+    public static final String RPUSH_EX = "rpushEx";
+    /**
+     * 项不存在时写入 hash 并设置过期时间，ARGV[2] 为项，ARGV[3] 为值，写入返回 1，已存在返回 0
+     */
+    public static final String HSET_IF_ABSENT_EX = "hsetIfAbsentEx";
+    /**
+     * LPUSH 后只保留最新的 N 个元素并设置过期时间，ARGV[2] 为最大长度，ARGV[3..] 为值，返回 list 的长度
+     */
+    public static final String LPUSH_BOUNDED = "lpushBounded";
+    /**
+     * 固定窗口计数器，第一次递增时设置过期时间（窗口大小），返回窗口内的计数
+     */
+    public static final String RATE_LIMIT = "rateLimit";
+
+    private final RedisTemplate<?, ?> redisTemplate;
+    private final Map<String, Script> scripts = new ConcurrentHashMap<>();
+
+    public RedisScriptRegistry(RedisTemplate<?, ?> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        register(HMSET_EX,
+                "for i = 2, #ARGV, " + UNPACK_BATCH + " do\n" +
+                "    redis.call('HMSET', KEYS[1], unpack(ARGV, i, math.min(i + " + (UNPACK_BATCH - 1) + ", #ARGV)))\n" +
+                "end\n" +
+                EXPIRE +
+                "return 1");
+        register(SADD_EX,
+                "local count = 0\n" +
+                "for i = 2, #ARGV, " + UNPACK_BATCH + " do\n" +
+                "    count = count + redis.call('SADD', KEYS[1], unpack(ARGV, i, math.min(i + " + (UNPACK_BATCH - 1) + ", #ARGV)))\n" +
+                "end\n" +
+                EXPIRE +
+                "return count");
+        register(RPUSH_EX,
+                "local size = 0\n" +
+                "for i = 2, #ARGV, " + UNPACK_BATCH + " do\n" +
+                "    size = redis.call('RPUSH', KEYS[1], unpack(ARGV, i, math.min(i + " + (UNPACK_BATCH - 1) + ", #ARGV)))\n" +
+                "end\n" +
+                EXPIRE +
+                "return size");
+        register(HSET_IF_ABSENT_EX,
+                "local ok = redis.call('HSETNX', KEYS[1], ARGV[2], ARGV[3])\n" +
+                "if ok == 1 then\n" +
+                "    " + EXPIRE +
+                "end\n" +
+                "return ok");
+        register(LPUSH_BOUNDED,
+                "local size = 0\n" +
+                "for i = 3, #ARGV, " + UNPACK_BATCH + " do\n" +
+                "    size = redis.call('LPUSH', KEYS[1], unpack(ARGV, i, math.min(i + " + (UNPACK_BATCH - 1) + ", #ARGV)))\n" +
+                "end\n" +
+                "local max = tonumber(ARGV[2])\n" +
+                "if size > max then redis.call('LTRIM', KEYS[1], 0, max - 1) size = max end\n" +
+                EXPIRE +
+                "return size");
+        // 计数器没有过期时间时（例如 EXPIRE 之前被 PERSIST）同样补上，避免永远无法重置
+        register(RATE_LIMIT,
+                "local count = redis.call('INCR', KEYS[1])\n" +
+                "if count == 1 or redis.call('TTL', KEYS[1]) == -1 then redis.call('EXPIRE', KEYS[1], ARGV[1]) end\n" +
+                "return count");
+    }
+
+    /**
+     * 注册脚本，同名脚本会被覆盖
+     *
+     * @param name   脚本名
+     * @param script 脚本内容
+     */
+    public void register(String name, String script) {
+        scripts.put(name, new Script(script));
+    }
+
+    /**
+     * 获取脚本的 SHA1
+     *
+     * @param name 脚本名
+     * @return
+     */
+    public String getSha(String name) {
+        return get(name).sha;
+    }
+
+    /**
+     * 将所有脚本加载到 Redis，可以在启动时调用，避免第一次调用时收到 NOSCRIPT
+     * <br>
+     * SCRIPT LOAD 没有 key，集群模式下只会加载到其中一个节点，其他节点在第一次执行时通过 EVAL 缓存脚本
+     */
+    public void loadAll() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            for (Script script : scripts.values()) {
+                connection.scriptLoad(script.body);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 通过 EVALSHA 执行脚本，收到 NOSCRIPT 时改用 EVAL 执行一次
+     *
+     * @param name       脚本名
+     * @param resultType 返回值类型，Long、Boolean、List 或者 byte[]
+     * @param keys       KEYS，已经序列化
+     * @param args       ARGV，已经序列化
+     * @param <T>
+     * @return 脚本的返回值，未经反序列化
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String name, Class<T> resultType, List<byte[]> keys, List<byte[]> args) {
+        Script script = get(name);
+        ReturnType returnType = ReturnType.fromJavaType(resultType);
+        byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+        int i = 0;
+        for (byte[] key : keys) {
+            keysAndArgs[i++] = key;
+        }
+        for (byte[] arg : args) {
+            keysAndArgs[i++] = arg;
+        }
+        return (T) redisTemplate.execute((RedisCallback<Object>) connection ->
+                evalSha(connection, name, script, returnType, keys.size(), keysAndArgs));
+    }
+
+    private Object evalSha(RedisConnection connection, String name, Script script, ReturnType returnType,
+                           int numKeys, byte[][] keysAndArgs) {
+        try {
+            return connection.evalSha(script.sha, returnType, numKeys, keysAndArgs);
+        } catch (DataAccessException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            // SCRIPT LOAD 没有 key，集群模式下可能加载到其他节点，EVAL 按 key 路由，并会在该节点缓存脚本
+            log.info("Redis 中没有脚本 {}，通过 EVAL 执行", name);
+            return connection.eval(script.body, returnType, numKeys, keysAndArgs);
+        }
+    }
+
+    /**
+     * 获取脚本内容，pipeline 中无法处理 NOSCRIPT，需要通过 EVAL 发送
+     *
+     * @param name 脚本名
+     * @return
+     */
+    byte[] getBody(String name) {
+        return get(name).body;
+    }
+
+    private Script get(String name) {
+        Script script = scripts.get(name);
+        if (script == null) {
+            throw new IllegalArgumentException("脚本不存在: " + name);
+        }
+        return script;
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Script {
+        private final byte[] body;
+        private final String sha;
+
+        Script(String script) {
+            this.body = script.getBytes(StandardCharsets.UTF_8);
+            this.sha = SecureUtil.sha1(script);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.qq.utils.Redis;
+
+import cn.hutool.core.util.IdUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StringRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * 从 Redis Stream 读取缓存失效事件
+ * <p>
+ * 1) 每条消息包含 prefix 和 id 两个字段，可以由 CDC 工具写入，也可以调用 {@link #publish}；
+ * <br>
+ * 2) 通过消费者组读取，同一条消息只会被一个节点处理，各节点的本地缓存由 {@link NearCache} 的通知删除；
+ * <br>
+ * 3) 消息在 {@link CacheInvalidator} 处理完成（删除或刷新成功）后才确认（XACK），
+ * 节点在合并窗口内宕机或处理失败时，未确认的消息会重新读取并处理；
+ * <br>
+ * 4) 使用固定的 consumer 名称时，重启后会先处理上次读取但未确认的消息；
+ * 使用随机名称时，{@link #stop} 会从消费者组中删除该 consumer（XGROUP DELCONSUMER），避免留下无人处理的 consumer，
+ * 此时它未确认的消息会被丢弃，因此部署为固定实例时应指定固定的名称（例如主机名）；
+ * <br>
+ * 5) 启动时 Stream 还不存在则不会写入任何数据，由读取线程定期检查，Stream 被创建后再创建消费者组并从头读取。
+ * <p>
+ * Stream 的长度需要由写入方通过 MAXLEN 或定期 XTRIM 控制。
+ */
+public class RedisStreamInvalidationSource implements InvalidationSource {
+    private final static Logger log = LoggerFactory.getLogger(RedisStreamInvalidationSource.class);
+
+    /**
+     * 消息中 key 前缀的字段名
+     */
+    public static final String FIELD_PREFIX = "prefix";
+    /**
+     * 消息中数据 id 的字段名
+     */
+    public static final String FIELD_ID = "id";
+    // 每次读取的最大消息数量、阻塞等待时间以及读取失败后的重试间隔
+    private static final int BATCH_SIZE = 500;
+    private static final long BLOCK_MILLIS = 1000L;
+    private static final long RETRY_MILLIS = 1000L;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String streamKey;
+    private final String group;
+    private final String consumer;
+    // consumer 名称是否为随机生成，停止时需要从消费者组中删除
+    private final boolean ephemeral;
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * 使用随机的 consumer 名称，停止时从消费者组中删除
+     *
+     * @param stringRedisTemplate
+     * @param streamKey           Stream 的 key
+     * @param group               消费者组，所有节点使用同一个
+     */
+    public RedisStreamInvalidationSource(StringRedisTemplate stringRedisTemplate, String streamKey, String group) {
+        this(stringRedisTemplate, streamKey, group, IdUtil.fastSimpleUUID(), true);
+    }
+
+    /**
+     * @param stringRedisTemplate
+     * @param streamKey           Stream 的 key
+     * @param group               消费者组，所有节点使用同一个
+     * @param consumer            当前节点的 consumer 名称，各节点不能重复
+     */
+    public RedisStreamInvalidationSource(StringRedisTemplate stringRedisTemplate, String streamKey, String group,
+                                         String consumer) {
+        this(stringRedisTemplate, streamKey, group, consumer, false);
+    }
+
+    private RedisStreamInvalidationSource(StringRedisTemplate stringRedisTemplate, String streamKey, String group,
+                                          String consumer, boolean ephemeral) {
+        if (consumer == null || consumer.isEmpty()) {
+            throw new IllegalArgumentException("consumer 不能为空");
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.streamKey = streamKey;
+        this.group = group;
+        this.consumer = consumer;
+        this.ephemeral = ephemeral;
+    }
+
+    /**
+     * 向 Stream 中写入一条数据变更事件
+     *
+     * @param keyPrefix redis 中缓存的 key 前缀
+     * @param id        数据 id
+     */
+    public void publish(String keyPrefix, Object id) {
+        Map<String, String> content = new HashMap<>(4);
+        content.put(FIELD_PREFIX, keyPrefix);
+        content.put(FIELD_ID, String.valueOf(id));
+        stringRedisTemplate.opsForStream().add(streamKey, content);
+    }
+
+    @Override
+    public synchronized void start(Function<List<InvalidationEvent>, CompletableFuture<Void>> sink) {
+        if (running) {
+            throw new IllegalStateException("已经启动");
+        }
+        boolean groupReady = createGroup(false);
+        running = true;
+        worker = new Thread(() -> poll(sink, groupReady), "cache-invalidation-stream");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (worker != null) {
+            try {
+                // 最多等待一次阻塞读取结束
+                worker.join(BLOCK_MILLIS * 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+            if (ephemeral) {
+                deleteConsumer();
+            }
+        }
+    }
+
+    private void deleteConsumer() {
+        try {
+            stringRedisTemplate.opsForStream().deleteConsumer(streamKey, Consumer.from(group, consumer));
+        } catch (RuntimeException e) {
+            log.warn("删除 consumer 失败，stream: {}，consumer: {}", streamKey, consumer, e);
+        }
+    }
+
+    /**
+     * 创建消费者组，已存在时忽略
+     *
+     * @param fromStart true 从头读取，用于启动后才创建的 Stream；false 只读取之后的消息
+     * @return Stream 不存在、无法创建消费者组时返回 false，Stream 由写入方创建，这里不写入任何数据
+     */
+    private boolean createGroup(boolean fromStart) {
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(streamKey))) {
+            return false;
+        }
+        try {
+            stringRedisTemplate.opsForStream().createGroup(streamKey,
+                    fromStart ? ReadOffset.from("0-0") : ReadOffset.latest(), group);
+        } catch (RuntimeException e) {
+            if (!hasError(e, "BUSYGROUP")) {
+                throw e;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 等待事件处理完成
+     *
+     * @return 处理成功返回 true，等待期间已停止返回 false，处理失败时抛出异常
+     */
+    private boolean awaitApplied(CompletableFuture<Void> applied) throws InterruptedException, ExecutionException {
+        while (running) {
+            try {
+                applied.get(BLOCK_MILLIS, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (TimeoutException e) {
+                // 继续等待，期间检查是否已停止
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasError(Throwable e, String code) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void poll(Function<List<InvalidationEvent>, CompletableFuture<Void>> sink, boolean groupReady) {
+        StreamOperations<String, String, String> ops = stringRedisTemplate.opsForStream();
+        Consumer from = Consumer.from(group, consumer);
+        StreamReadOptions options = StreamReadOptions.empty().count(BATCH_SIZE).block(Duration.ofMillis(BLOCK_MILLIS));
+        // 先读取上次未确认的消息，读完后再读取新消息
+        boolean recovering = true;
+        while (running) {
+            try {
+                if (!groupReady) {
+                    // Stream 在启动后才创建，其中的消息都是启动后写入的，从头读取
+                    groupReady = createGroup(true);
+                    if (!groupReady) {
+                        Thread.sleep(RETRY_MILLIS);
+                        continue;
+                    }
+                }
+                StreamOffset<String> offset = StreamOffset.create(streamKey,
+                        recovering ? ReadOffset.from("0-0") : ReadOffset.lastConsumed());
+                // 使用单个 StreamOffset 的重载，避免泛型可变参数
+                List<StringRecord> records = stringRedisTemplate.execute((RedisCallback<List<StringRecord>>) connection ->
+                        ((StringRedisConnection) connection).xReadGroupAsString(from, options, offset));
+                if (records == null || records.isEmpty()) {
+                    recovering = false;
+                    continue;
+                }
+                List<InvalidationEvent> events = new ArrayList<>(records.size());
+                RecordId[] ids = new RecordId[records.size()];
+                for (int i = 0; i < records.size(); i++) {
+                    StringRecord record = records.get(i);
+                    ids[i] = record.getId();
+                    Map<String, String> value = record.getValue();
+                    String prefix = value.get(FIELD_PREFIX);
+                    String id = value.get(FIELD_ID);
+                    // 忽略格式不正确的消息
+                    if (prefix != null && id != null) {
+                        events.add(new InvalidationEvent(prefix, id));
+                    }
+                }
+                if (!events.isEmpty() && !awaitApplied(sink.apply(events))) {
+                    // 已停止，不确认，重启后重新处理
+                    break;
+                }
+                ops.acknowledge(streamKey, group, ids);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                // Stream 或消费者组被删除后重新创建
+                if (hasError(e, "NOGROUP")) {
+                    groupReady = false;
+                }
+                // 重新读取未确认的消息
+                recovering = true;
+                log.error("读取缓存失效事件失败，stream: {}", streamKey, e);
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -1,24 +1,76 @@
 package com.qq.utils.Redis;
 
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.ConvertingCursor;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.util.CollectionUtils;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 基于spring和redis的redisTemplate工具类
  * 针对所有的hash 都是以h开头的方法
  * 针对所有的Set 都是以s开头的方法                    不含通用方法
  * 针对所有的List 都是以l开头的方法
+ * <p>
+ * 带过期时间的写入方法通过一条 SET EX 命令或一个 Lua 脚本（见 {@link RedisScriptRegistry}）完成，
+ * 写入和设置过期时间是原子的，只需要一次网络往返；
+ * 多条命令可以通过 {@link #pipeline} 一次发送；大集合通过 scan 开头的方法分页遍历。
  */
 public class RedisUtil {
     private RedisTemplate<String, Object> redisTemplate;
+    private RedisScriptRegistry scriptRegistry;
+    private SlotRouter slotRouter;
 
     public void setRedisTemplate(RedisTemplate<String, Object> redisTemplate) {
+        SlotRouter old = this.slotRouter;
         this.redisTemplate = redisTemplate;
+        this.scriptRegistry = new RedisScriptRegistry(redisTemplate);
+        this.slotRouter = new SlotRouter(redisTemplate, Runtime.getRuntime().availableProcessors());
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * 容器关闭时释放集群路由使用的线程池
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (slotRouter != null) {
+            slotRouter.shutdown();
+        }
+    }
+
+    /**
+     * Lua 脚本注册表，可以注册自定义脚本
+     *
+     * @return
+     */
+    public RedisScriptRegistry getScriptRegistry() {
+        return scriptRegistry;
     }
     //=============================common============================
 
@@ -68,6 +120,8 @@ public class RedisUtil {
 
     /**
      * 删除缓存
+     * <p>
+     * 集群模式下按 slot 分组，每个节点的 key 通过一次 pipeline 删除，各节点并行执行
      *
      * @param key 可以传一个值 或多个
      */
@@ -76,12 +130,28 @@ public class RedisUtil {
         if (key != null && key.length > 0) {
             if (key.length == 1) {
                 redisTemplate.delete(key[0]);
+            } else if (slotRouter.isCluster()) {
+                delInCluster(CollectionUtils.arrayToList(key));
             } else {
                 redisTemplate.delete(CollectionUtils.arrayToList(key));
             }
         }
     }
 
+    private long delInCluster(List<String> keys) {
+        List<byte[]> rawKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            rawKeys.add(rawKey(key));
+        }
+        long count = 0;
+        for (SlotRouter.SlotGroup group : slotRouter.execute(rawKeys, RedisConnection::del)) {
+            if (group.getResult() instanceof Long) {
+                count += (Long) group.getResult();
+            }
+        }
+        return count;
+    }
+
     //============================String=============================
 
     /**
@@ -94,6 +164,38 @@ public class RedisUtil {
         return key == null ? null : redisTemplate.opsForValue().get(key);
     }
 
+    /**
+     * 批量获取
+     * <p>
+     * 集群模式下按 slot 分组，同一个 slot 的 key 合并为一条 MGET，每个节点通过一次 pipeline 发送，各节点并行执行
+     *
+     * @param keys 键
+     * @return 与 keys 顺序一致的值，不存在的 key 对应 null
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> mget(List<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (!slotRouter.isCluster()) {
+            return redisTemplate.opsForValue().multiGet(keys);
+        }
+        List<byte[]> rawKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            rawKeys.add(rawKey(key));
+        }
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        Object[] values = new Object[keys.size()];
+        for (SlotRouter.SlotGroup group : slotRouter.execute(rawKeys, RedisConnection::mGet)) {
+            List<?> result = (List<?>) group.getResult();
+            for (int i = 0; i < group.getIndices().size(); i++) {
+                Object raw = result == null ? null : result.get(i);
+                values[group.getIndices().get(i)] = RedisBatch.deserialize(valueSerializer, raw);
+            }
+        }
+        return Arrays.asList(values);
+    }
+
     /**
      * 普通缓存放入
      *
@@ -113,7 +215,7 @@ public class RedisUtil {
     }
 
     /**
-     * 普通缓存放入并设置时间
+     * 普通缓存放入并设置时间，通过一条 SET EX 命令完成
      *
      * @param key   键
      * @param value 值
@@ -177,6 +279,8 @@ public class RedisUtil {
 
     /**
      * 获取hashKey对应的所有键值
+     * <p>
+     * 通过 HGETALL 一次读取整个hash表，大hash表请使用 {@link #hScan}
      *
      * @param key 键
      * @return 对应的多个键值
@@ -212,10 +316,15 @@ public class RedisUtil {
      */
     public boolean hmset(String key, Map<String, Object> map, long time) {
         try {
-            redisTemplate.opsForHash().putAll(key, map);
-            if (time > 0) {
-                expire(key, time);
+            if (time <= 0) {
+                return hmset(key, map);
             }
+            List<byte[]> args = new ArrayList<>(map.size() * 2);
+            map.forEach((item, value) -> {
+                args.add(rawHashKey(item));
+                args.add(rawHashValue(value));
+            });
+            executeWithTtl(RedisScriptRegistry.HMSET_EX, key, time, args);
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -252,10 +361,13 @@ public class RedisUtil {
      */
     public boolean hset(String key, String item, Object value, long time) {
         try {
-            redisTemplate.opsForHash().put(key, item, value);
-            if (time > 0) {
-                expire(key, time);
+            if (time <= 0) {
+                return hset(key, item, value);
             }
+            List<byte[]> args = new ArrayList<>(2);
+            args.add(rawHashKey(item));
+            args.add(rawHashValue(value));
+            executeWithTtl(RedisScriptRegistry.HMSET_EX, key, time, args);
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -263,6 +375,30 @@ public class RedisUtil {
         }
     }
 
+    /**
+     * 项不存在时才放入hash表,如果hash表不存在将创建,代替 hHasKey + hset,一次网络往返且是原子的
+     *
+     * @param key   键
+     * @param item  项
+     * @param value 值
+     * @param time  时间(秒) 写入成功时设置hash表的过期时间,小于等于0不设置
+     * @return true 写入成功 false 项已存在或写入失败
+     */
+    public boolean hsetIfAbsent(String key, String item, Object value, long time) {
+        try {
+            List<byte[]> args = new ArrayList<>(3);
+            args.add(rawNumber(time));
+            args.add(rawHashKey(item));
+            args.add(rawHashValue(value));
+            Long ok = scriptRegistry.execute(RedisScriptRegistry.HSET_IF_ABSENT_EX, Long.class,
+                    Collections.singletonList(rawKey(key)), args);
+            return ok != null && ok == 1;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     /**
      * 删除hash表中的值
      *
@@ -312,6 +448,8 @@ public class RedisUtil {
 
     /**
      * 根据key获取Set中的所有值
+     * <p>
+     * 通过 SMEMBERS 一次读取整个set，大set请使用 {@link #sScan}
      *
      * @param key 键
      * @return
@@ -367,9 +505,10 @@ public class RedisUtil {
      */
     public long sSetAndTime(String key, long time, Object... values) {
         try {
-            Long count = redisTemplate.opsForSet().add(key, values);
-            if (time > 0) expire(key, time);
-            return count;
+            if (time <= 0) {
+                return sSet(key, values);
+            }
+            return executeWithTtl(RedisScriptRegistry.SADD_EX, key, time, rawValues(values));
         } catch (Exception e) {
             e.printStackTrace();
             return 0;
@@ -411,6 +550,8 @@ public class RedisUtil {
 
     /**
      * 获取list缓存的内容
+     * <p>
+     * 范围很大时请使用 {@link #lScan} 分页读取
      *
      * @param key   键
      * @param start 开始
@@ -484,8 +625,10 @@ public class RedisUtil {
      */
     public boolean lSet(String key, Object value, long time) {
         try {
-            redisTemplate.opsForList().rightPush(key, value);
-            if (time > 0) expire(key, time);
+            if (time <= 0) {
+                return lSet(key, value);
+            }
+            executeWithTtl(RedisScriptRegistry.RPUSH_EX, key, time, Collections.singletonList(rawValue(value)));
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -520,8 +663,10 @@ public class RedisUtil {
      */
     public boolean lSet(String key, List<Object> value, long time) {
         try {
-            redisTemplate.opsForList().rightPushAll(key, value);
-            if (time > 0) expire(key, time);
+            if (time <= 0) {
+                return lSet(key, value);
+            }
+            executeWithTtl(RedisScriptRegistry.RPUSH_EX, key, time, rawValues(value.toArray()));
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -529,6 +674,32 @@ public class RedisUtil {
         }
     }
 
+    /**
+     * 将数据放入list头部,只保留最新的 maxSize 个元素并设置过期时间,LPUSH + LTRIM + EXPIRE 一次完成
+     *
+     * @param key     键
+     * @param maxSize 最大长度
+     * @param time    时间(秒) 小于等于0不设置
+     * @param values  值 可以是多个
+     * @return list 的长度
+     */
+    public long lPushBounded(String key, long maxSize, long time, Object... values) {
+        if (maxSize <= 0) {
+            throw new RuntimeException("最大长度必须大于0");
+        }
+        try {
+            List<byte[]> args = new ArrayList<>(values.length + 2);
+            args.add(rawNumber(time));
+            args.add(rawNumber(maxSize));
+            args.addAll(rawValues(values));
+            return scriptRegistry.execute(RedisScriptRegistry.LPUSH_BOUNDED, Long.class,
+                    Collections.singletonList(rawKey(key)), args);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
     /**
      * 根据索引修改list中的某条数据
      *
@@ -564,4 +735,243 @@ public class RedisUtil {
             return 0;
         }
     }
+
+    //===============================scan=================================
+
+    /**
+     * 通过 SCAN 分页遍历匹配的 key，每次只从 Redis 读取一页，内存占用与集合大小无关
+     * <p>
+     * 返回的 Stream 占用一个 Redis 连接，必须关闭，使用 limit、findFirst 等提前结束时同样需要关闭：
+     * <pre>
+     * try (Stream&lt;String&gt; keys = redisUtil.scan("user:*", 500)) {
+     *     keys.limit(1000).forEach(...);
+     * }
+     * </pre>
+     * SCAN 的语义决定了遍历期间被修改的 key 可能重复出现或者被遗漏。
+     *
+     * @param pattern  匹配模式，例如 user:*
+     * @param pageSize 每页的数量，只是给 Redis 的建议值
+     * @return key 的 Stream
+     */
+    @SuppressWarnings("unchecked")
+    public Stream<String> scan(String pattern, int pageSize) {
+        ScanOptions options = scanOptions(pattern, pageSize);
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        Cursor<String> cursor = redisTemplate.executeWithStickyConnection((RedisCallback<Cursor<String>>) connection ->
+                new ConvertingCursor<>(connection.scan(options), keySerializer::deserialize));
+        return stream(cursor);
+    }
+
+    /**
+     * 通过 HSCAN 分页遍历hash表，用法与 {@link #scan} 相同，返回的 Stream 必须关闭
+     *
+     * @param key      键
+     * @param pattern  项的匹配模式，为 null 时遍历所有项
+     * @param pageSize 每页的数量
+     * @return 键值对的 Stream
+     */
+    public Stream<Map.Entry<Object, Object>> hScan(String key, String pattern, int pageSize) {
+        return stream(redisTemplate.opsForHash().scan(key, scanOptions(pattern, pageSize)));
+    }
+
+    /**
+     * 通过 SSCAN 分页遍历set，用法与 {@link #scan} 相同，返回的 Stream 必须关闭
+     *
+     * @param key      键
+     * @param pattern  值的匹配模式，为 null 时遍历所有值
+     * @param pageSize 每页的数量
+     * @return 值的 Stream
+     */
+    public Stream<Object> sScan(String key, String pattern, int pageSize) {
+        return stream(redisTemplate.opsForSet().scan(key, scanOptions(pattern, pageSize)));
+    }
+
+    /**
+     * 通过多次 LRANGE 分页遍历list，消费到哪里才读取到哪里，提前结束时不会读取剩余的页
+     * <p>
+     * 遍历期间list被修改时，已读取页之后的元素会整体偏移，可能重复或者遗漏。
+     *
+     * @param key      键
+     * @param pageSize 每页的数量
+     * @return 值的 Stream
+     */
+    public Stream<Object> lScan(String key, int pageSize) {
+        if (pageSize <= 0) {
+            throw new RuntimeException("每页的数量必须大于0");
+        }
+        Iterator<Object> iterator = new Iterator<Object>() {
+            private List<Object> page = Collections.emptyList();
+            private int index;
+            private long start;
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                if (index < page.size()) {
+                    return true;
+                }
+                if (last) {
+                    return false;
+                }
+                List<Object> next = redisTemplate.opsForList().range(key, start, start + pageSize - 1);
+                page = next == null ? Collections.emptyList() : next;
+                index = 0;
+                start += page.size();
+                last = page.size() < pageSize;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(index++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    private static ScanOptions scanOptions(String pattern, int pageSize) {
+        if (pageSize <= 0) {
+            throw new RuntimeException("每页的数量必须大于0");
+        }
+        ScanOptions.ScanOptionsBuilder builder = ScanOptions.scanOptions().count(pageSize);
+        if (pattern != null) {
+            builder.match(pattern);
+        }
+        return builder.build();
+    }
+
+    // 关闭 Stream 时关闭游标并释放连接
+    private static <T> Stream<T> stream(Cursor<T> cursor) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        cursor.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    //===============================limit=================================
+
+    /**
+     * 固定窗口限流,窗口内的计数通过一次脚本调用递增并在第一次递增时设置窗口的过期时间
+     *
+     * @param key   键
+     * @param limit 窗口内允许的次数
+     * @param time  窗口大小(秒)
+     * @return true 允许 false 超过限制
+     */
+    public boolean rateLimit(String key, long limit, long time) {
+        if (time <= 0) {
+            throw new RuntimeException("窗口大小必须大于0");
+        }
+        Long count = scriptRegistry.execute(RedisScriptRegistry.RATE_LIMIT, Long.class,
+                Collections.singletonList(rawKey(key)), Collections.singletonList(rawNumber(time)));
+        return count != null && count <= limit;
+    }
+
+    //===============================pipeline=================================
+
+    /**
+     * 通过 pipeline 一次发送多条命令
+     * <pre>
+     * List&lt;RedisBatch.Response&lt;Object&gt;&gt; names = new ArrayList&lt;&gt;();
+     * redisUtil.pipeline(batch -&gt; {
+     *     for (String id : ids) {
+     *         names.add(batch.hget("user:" + id, "name"));
+     *     }
+     *     batch.set("user:last", ids.get(0), 60);
+     * });
+     * names.get(0).get();
+     * </pre>
+     *
+     * @param operations 向 batch 中添加命令，命令的结果在本方法返回后通过 Response 获取
+     * @return true 全部成功 false 部分或全部失败，失败命令的 Response 在 get 时抛出异常
+     */
+    public boolean pipeline(Consumer<RedisBatch> operations) {
+        RedisBatch batch = newBatch();
+        operations.accept(batch);
+        try {
+            return execute(batch);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    RedisBatch newBatch() {
+        return new RedisBatch(redisTemplate, scriptRegistry);
+    }
+
+    /**
+     * 通过 pipeline 发送 batch 中的所有命令并填入结果
+     *
+     * @return true 全部成功 false 部分命令失败，对应的 Response 在 get 时抛出异常
+     * @throws RuntimeException 连接失败等导致整个 pipeline 没有结果
+     */
+    boolean execute(RedisBatch batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                batch.send(connection);
+                return null;
+            }, RedisSerializer.byteArray());
+            batch.complete(results);
+            return true;
+        } catch (RedisPipelineException e) {
+            // 部分命令失败时异常中带有所有命令的结果，失败的位置为异常
+            if (e.getPipelineResult() == null || e.getPipelineResult().isEmpty()) {
+                throw e;
+            }
+            batch.complete(e.getPipelineResult());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // 执行写入并设置过期时间的脚本，ARGV[1] 为过期时间(秒)
+    private Long executeWithTtl(String script, String key, long time, List<byte[]> values) {
+        List<byte[]> args = new ArrayList<>(values.size() + 1);
+        args.add(rawNumber(time));
+        args.addAll(values);
+        return scriptRegistry.execute(script, Long.class, Collections.singletonList(rawKey(key)), args);
+    }
+
+    private static byte[] rawNumber(long number) {
+        return String.valueOf(number).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String key) {
+        return RedisBatch.serialize((RedisSerializer<Object>) redisTemplate.getKeySerializer(), key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawValue(Object value) {
+        return RedisBatch.serialize((RedisSerializer<Object>) redisTemplate.getValueSerializer(), value);
+    }
+
+    private List<byte[]> rawValues(Object[] values) {
+        List<byte[]> raw = new ArrayList<>(values.length);
+        for (Object value : values) {
+            raw.add(rawValue(value));
+        }
+        return raw;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawHashKey(Object item) {
+        return RedisBatch.serialize((RedisSerializer<Object>) redisTemplate.getHashKeySerializer(), item);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawHashValue(Object value) {
+        return RedisBatch.serialize((RedisSerializer<Object>) redisTemplate.getHashValueSerializer(), value);
+    }
 }
@@ -0,0 +1,161 @@
+package com.qq.utils.Redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 号段模式的序列号分配器，供 {@link RedisIdWorker} 使用
+ * <p>
+ * 1) 每个节点通过一次 INCRBY step 从 Redis 租用一段连续的序列号，之后在本地通过 AtomicLong 分配，
+ * 生成 id 时不再访问 Redis；
+ * <br>
+ * 2) 当前号段使用到 75% 时异步预取下一个号段，用完后直接切换，Redis 短暂不可用时只要预取的号段还有剩余就不受影响；
+ * <br>
+ * 3) 号段大小根据上一个号段的消耗速度调整，目标是每个号段大约使用 {@link #TARGET_SEGMENT_MILLIS} 毫秒，
+ * 并限制在 [minStep, maxStep] 之间；
+ * <br>
+ * 4) 序列号按天计数，日期变化后旧号段剩余的序列号直接丢弃，避免与新一天的计数器重复。
+ */
+class SegmentIdAllocator {
+    private final static Logger log = LoggerFactory.getLogger(SegmentIdAllocator.class);
+
+    /**
+     * 号段使用到该比例时预取下一个号段
+     */
+    private static final double PREFETCH_RATIO = 0.75;
+    /**
+     * 期望每个号段的使用时长
+     */
+    private static final long TARGET_SEGMENT_MILLIS = 30_000L;
+
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long minStep;
+    private final long maxStep;
+    private final IdStats stats;
+    // key 前缀 -> 当天的号段缓冲
+    private final ConcurrentHashMap<String, Buffer> buffers = new ConcurrentHashMap<>();
+
+    SegmentIdAllocator(StringRedisTemplate stringRedisTemplate, long minStep, long maxStep, IdStats stats) {
+        if (minStep <= 0 || maxStep < minStep) {
+            throw new IllegalArgumentException("号段大小必须满足 0 < minStep <= maxStep");
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.minStep = minStep;
+        this.maxStep = maxStep;
+        this.stats = stats;
+    }
+
+    /**
+     * 获取下一个序列号
+     *
+     * @param keyPrefix  业务前缀
+     * @param counterKey 当天的计数器 key
+     * @return 序列号
+     */
+    long next(String keyPrefix, String counterKey) {
+        Buffer buffer = buffers.get(keyPrefix);
+        if (buffer == null || !buffer.counterKey.equals(counterKey)) {
+            // 第一次使用或者日期变化，创建新的缓冲，旧号段直接丢弃
+            Buffer created = new Buffer(counterKey);
+            buffer = buffers.compute(keyPrefix, (k, old) ->
+                    old != null && old.counterKey.equals(counterKey) ? old : created);
+        }
+        return buffer.next();
+    }
+
+    private Segment lease(String counterKey, long step) {
+        long begin = System.nanoTime();
+        Long end = stringRedisTemplate.opsForValue().increment(counterKey, step);
+        stats.recordRedis(System.nanoTime() - begin);
+        if (end == null) {
+            throw new IllegalStateException("租用号段失败，key: " + counterKey);
+        }
+        return new Segment(end - step + 1, end);
+    }
+
+    // 根据上一个号段的消耗速度计算下一个号段的大小
+    private long nextStep(Segment segment, long used) {
+        long elapsed = Math.max(System.currentTimeMillis() - segment.leasedAt, 1);
+        long step = used * TARGET_SEGMENT_MILLIS / elapsed;
+        return Math.min(Math.max(step, minStep), maxStep);
+    }
+
+    private static class Segment {
+        private final long start;
+        private final long end;
+        private final AtomicLong cursor;
+        private final long prefetchAt;
+        private final long leasedAt = System.currentTimeMillis();
+
+        Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.cursor = new AtomicLong(start);
+            this.prefetchAt = start + (long) ((end - start + 1) * PREFETCH_RATIO);
+        }
+    }
+
+    private class Buffer {
+        private final String counterKey;
+        private volatile Segment current;
+        private volatile CompletableFuture<Segment> prefetched;
+
+        Buffer(String counterKey) {
+            this.counterKey = counterKey;
+        }
+
+        long next() {
+            while (true) {
+                Segment segment = current;
+                if (segment != null) {
+                    long value = segment.cursor.getAndIncrement();
+                    if (value <= segment.end) {
+                        if (value == segment.prefetchAt) {
+                            // 只有恰好取到阈值的线程触发预取
+                            prefetch(segment, value - segment.start + 1);
+                        }
+                        return value;
+                    }
+                }
+                synchronized (this) {
+                    if (current == segment) {
+                        current = takeNext(segment);
+                    }
+                }
+            }
+        }
+
+        private void prefetch(Segment segment, long used) {
+            long step = nextStep(segment, used);
+            prefetched = CompletableFuture.supplyAsync(() -> lease(counterKey, step), PREFETCH_EXECUTOR);
+        }
+
+        // 当前号段用完，优先使用预取的号段，预取失败或未预取时同步租用
+        private Segment takeNext(Segment exhausted) {
+            CompletableFuture<Segment> future = prefetched;
+            prefetched = null;
+            if (future != null) {
+                try {
+                    return future.join();
+                } catch (Exception e) {
+                    log.warn("预取号段失败，改为同步租用，key: {}", counterKey, e);
+                }
+            }
+            long step = exhausted == null ? minStep : nextStep(exhausted, exhausted.end - exhausted.start + 1);
+            return lease(counterKey, step);
+        }
+    }
+}
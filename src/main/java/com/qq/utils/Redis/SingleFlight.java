@@ -0,0 +1,74 @@
+package com.qq.utils.Redis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一个 JVM 内对相同 key 的并发调用
+ * <p>
+ * 第一个到达的线程负责真正执行，其余线程等待并共享它的结果（或异常），
+ * 执行结束后立即移除，下一次调用会重新执行，因此不会产生缓存效果。
+ * <br>
+ * 用于缓存重建：缓存失效瞬间同一节点上的大量请求只会有一个去竞争分布式锁、查询数据库。
+ */
+public class SingleFlight {
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 执行调用，相同 key 的并发调用只会执行一次
+     *
+     * @param key      调用的唯一标识
+     * @param supplier 实际执行的逻辑
+     * @param <T>
+     * @return 执行结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> supplier) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = calls.putIfAbsent(key, future);
+        if (inFlight != null) {
+            // 已有线程在执行，等待其结果
+            return (T) await(inFlight);
+        }
+        try {
+            T result = supplier.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, future);
+        }
+    }
+
+    /**
+     * 当前正在执行的调用数量
+     *
+     * @return
+     */
+    public int inFlight() {
+        return calls.size();
+    }
+
+    private static Object await(CompletableFuture<Object> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.qq.utils.Redis;
+
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Redis Cluster 下多 key 命令的路由，供 {@link RedisUtil} 使用
+ * <p>
+ * 集群模式下一条 DEL / MGET 中的 key 必须位于同一个 slot，否则报 CROSSSLOT，
+ * Spring 的集群连接遇到这种情况时会退化为每个 key 一条命令。这里的做法是：
+ * <br>
+ * 1) 按 CRC16 slot 分组（支持 {hashtag}），同一个 slot 的 key 合并为一条命令；
+ * <br>
+ * 2) 再按 slot 所在的主节点分组，每个节点的命令通过一次 pipeline 发送，
+ * 驱动不支持集群 pipeline 时（Jedis）退化为逐条发送；
+ * <br>
+ * 3) 不同节点的批次并行执行，最后按原始顺序合并结果。
+ * <p>
+ * 非集群模式下不需要路由，由调用方直接执行。
+ */
+class SlotRouter {
+    /**
+     * 对同一个 slot 的一组 key 执行的命令
+     */
+    interface SlotCommand {
+        Object execute(RedisConnection connection, byte[][] keys);
+    }
+
+    /**
+     * 同一个 slot 的一组 key 及其执行结果
+     */
+    static class SlotGroup {
+        private final List<Integer> indices = new ArrayList<>();
+        private final List<byte[]> keys = new ArrayList<>();
+        private Object result;
+
+        /**
+         * 这组 key 在原始列表中的下标
+         *
+         * @return
+         */
+        List<Integer> getIndices() {
+            return indices;
+        }
+
+        Object getResult() {
+            return result;
+        }
+
+        byte[][] keyArray() {
+            return keys.toArray(new byte[0][]);
+        }
+    }
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ExecutorService executor;
+    private volatile Boolean cluster;
+    private volatile boolean pipelineSupported = true;
+
+    SlotRouter(RedisTemplate<String, Object> redisTemplate, int parallelism) {
+        this.redisTemplate = redisTemplate;
+        this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "redis-slot-router");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 关闭并行执行的线程池，正在执行的批次会继续完成
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 是否为集群模式，第一次调用时检测
+     *
+     * @return
+     */
+    boolean isCluster() {
+        Boolean result = cluster;
+        if (result == null) {
+            result = Boolean.TRUE.equals(redisTemplate.execute(
+                    (RedisCallback<Boolean>) connection -> connection instanceof RedisClusterConnection));
+            cluster = result;
+        }
+        return result;
+    }
+
+    /**
+     * 按 slot 分组后在各个节点上并行执行
+     *
+     * @param keys    序列化后的 key
+     * @param command 每个 slot 执行的命令
+     * @return 每个 slot 的执行结果
+     */
+    List<SlotGroup> execute(List<byte[]> keys, SlotCommand command) {
+        Map<Integer, SlotGroup> slots = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            SlotGroup group = slots.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(key), k -> new SlotGroup());
+            group.indices.add(i);
+            group.keys.add(key);
+        }
+        List<List<SlotGroup>> batches = groupByNode(slots);
+        if (batches.size() == 1) {
+            executeOnNode(batches.get(0), command);
+        } else {
+            List<CompletableFuture<Void>> futures = new ArrayList<>(batches.size());
+            for (List<SlotGroup> batch : batches) {
+                futures.add(CompletableFuture.runAsync(() -> executeOnNode(batch, command), executor));
+            }
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        return new ArrayList<>(slots.values());
+    }
+
+    // 按 slot 所在的主节点分组，拓扑信息由驱动在本地缓存，找不到节点的 slot 单独一组
+    private List<List<SlotGroup>> groupByNode(Map<Integer, SlotGroup> slots) {
+        if (slots.size() == 1) {
+            return Collections.singletonList(new ArrayList<>(slots.values()));
+        }
+        List<RedisClusterNode> masters = redisTemplate.execute((RedisCallback<List<RedisClusterNode>>) connection -> {
+            List<RedisClusterNode> nodes = new ArrayList<>();
+            for (RedisClusterNode node : ((RedisClusterConnection) connection).clusterGetNodes()) {
+                if (node.isMaster()) {
+                    nodes.add(node);
+                }
+            }
+            return nodes;
+        });
+        Map<RedisClusterNode, List<SlotGroup>> byNode = new HashMap<>();
+        List<SlotGroup> unknown = new ArrayList<>();
+        slots.forEach((slot, group) -> {
+            RedisClusterNode owner = null;
+            for (RedisClusterNode node : masters) {
+                if (node.servesSlot(slot)) {
+                    owner = node;
+                    break;
+                }
+            }
+            (owner == null ? unknown : byNode.computeIfAbsent(owner, k -> new ArrayList<>())).add(group);
+        });
+        List<List<SlotGroup>> batches = new ArrayList<>(byNode.values());
+        if (!unknown.isEmpty()) {
+            batches.add(unknown);
+        }
+        return batches;
+    }
+
+    private void executeOnNode(List<SlotGroup> groups, SlotCommand command) {
+        if (pipelineSupported && groups.size() > 1) {
+            try {
+                List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (SlotGroup group : groups) {
+                        command.execute(connection, group.keyArray());
+                    }
+                    return null;
+                }, RedisSerializer.byteArray());
+                for (int i = 0; i < groups.size(); i++) {
+                    groups.get(i).result = results.get(i);
+                }
+                return;
+            } catch (UnsupportedOperationException e) {
+                pipelineSupported = false;
+            }
+        }
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            for (SlotGroup group : groups) {
+                group.result = command.execute(connection, group.keyArray());
+            }
+            return null;
+        });
+    }
+}
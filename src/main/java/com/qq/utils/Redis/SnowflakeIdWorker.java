@@ -0,0 +1,296 @@
+package com.qq.utils.Redis;
+
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.IdUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 本地雪花算法 id 生成器
+ * <p>
+ * 与 {@link RedisIdWorker} 相比，生成 id 时完全不访问网络，适用于不需要按天统计数量的表。
+ * <p></p>
+ * Id 组成部分：
+ * <br>
+ * 符号位：1bit，永远为0
+ * <br>
+ * 时间戳：41bit，以毫秒为单位，从 2022-01-01 开始，可以使用69年
+ * <br>
+ * 机器id：10bit，最多 1024 个节点，通过 Redis 分配时以租约的方式持有，见 {@link #SnowflakeIdWorker(StringRedisTemplate)}
+ * <br>
+ * 序列号：12bit，毫秒内的计数器，每毫秒每个节点最多 4096 个 id
+ * <p></p>
+ * 实现细节：
+ * <br>
+ * 1) 上一次的时间戳和序列号合并保存在一个 AtomicLong 中，通过 CAS 更新，不加锁；
+ * <br>
+ * 2) 序列号用完时直接借用下一毫秒（加 1 自然进位到时间戳部分），最多领先系统时钟 5 毫秒，超过后等待时钟追上；
+ * <br>
+ * 3) 发生时钟回拨时同样沿用上一次的时间戳继续递增，id 仍然单调递增；回拨超过 5 毫秒时等待时钟追上，
+ * 超过 1 秒直接抛出 IllegalStateException；
+ * <br>
+ * 4) 停止时时间戳仍领先系统时钟的，租约保留到系统时钟追上之后再过期，
+ * 下一个拿到同一机器id的节点不会重复使用这段时间戳。
+ */
+public class SnowflakeIdWorker implements IdWorker {
+    private final static Logger log = LoggerFactory.getLogger(SnowflakeIdWorker.class);
+
+    /**
+     * 开始时间戳
+     * 2022-01-01 00:00:00 UTC
+     */
+    private static final long BEGIN_TIMESTAMP_MILLIS = 1640995200000L;
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    /**
+     * 分配机器id的计数器，只用于选择起始的候选id
+     */
+    private static final String WORKER_ID_KEY = "snowflake:worker";
+    /**
+     * 机器id租约的 key 前缀
+     */
+    private static final String LEASE_KEY_PREFIX = "snowflake:worker:";
+    private static final long DEFAULT_LEASE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * 时间戳最多领先系统时钟的毫秒数，以及最多等待时钟追上的毫秒数
+     */
+    private static final long MAX_AHEAD_MILLIS = 5;
+    private static final long MAX_WAIT_MILLIS = 1000;
+    // 比较 token 后续期
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+    // 比较 token 后删除
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final long workerId;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String leaseToken;
+    private final long leaseMillis;
+    private final ScheduledExecutorService heartbeat;
+    /**
+     * 租约的有效期（毫秒时间戳），超过后停止生成 id；指定机器id时为 Long.MAX_VALUE
+     */
+    private volatile long leaseValidUntil = Long.MAX_VALUE;
+    /**
+     * 高位为上一次的时间戳，低 12 位为序列号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * 指定机器id
+     *
+     * @param workerId 0 ~ 1023
+     */
+    public SnowflakeIdWorker(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId 必须在 0 ~ " + MAX_WORKER_ID + " 之间");
+        }
+        this.workerId = workerId;
+        this.stringRedisTemplate = null;
+        this.leaseToken = null;
+        this.leaseMillis = 0;
+        this.heartbeat = null;
+    }
+
+    /**
+     * 通过 Redis 租约分配机器id，租期 30 秒
+     *
+     * @param stringRedisTemplate
+     */
+    public SnowflakeIdWorker(StringRedisTemplate stringRedisTemplate) {
+        this(stringRedisTemplate, DEFAULT_LEASE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 通过 Redis 租约分配机器id
+     * <p>
+     * 1) 从自增计数器得到起始的候选id，依次尝试 SET snowflake:worker:{id} token NX PX，第一个成功的作为机器id，
+     * 1024 个id都被占用时创建失败；
+     * <br>
+     * 2) 后台线程每隔租期的 1/3 续期一次，续期时比较 token，不会续上其他节点的租约；
+     * <br>
+     * 3) 租约被其他节点占用，或长时间续期失败超过租期后，{@link #nextId()} 抛出 IllegalStateException，
+     * 不会与其他节点生成重复的 id；生成 id 时只读取本地记录的有效期，不访问 Redis。
+     *
+     * @param stringRedisTemplate
+     * @param leaseTime           租期
+     * @param unit                租期单位
+     */
+    public SnowflakeIdWorker(StringRedisTemplate stringRedisTemplate, long leaseTime, TimeUnit unit) {
+        long millis = unit.toMillis(leaseTime);
+        if (millis < 3) {
+            throw new IllegalArgumentException("租期不能小于 3 毫秒");
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.leaseToken = IdUtil.fastSimpleUUID();
+        this.leaseMillis = millis;
+        long start = System.currentTimeMillis();
+        this.workerId = acquireWorkerId();
+        this.leaseValidUntil = start + millis;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "snowflake-lease-" + workerId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = millis / 3;
+        heartbeat.scheduleAtFixedRate(this::renew, period, period, TimeUnit.MILLISECONDS);
+        log.info("雪花算法机器id: {}", workerId);
+    }
+
+    private long acquireWorkerId() {
+        Long count = stringRedisTemplate.opsForValue().increment(WORKER_ID_KEY);
+        if (count == null) {
+            throw new IllegalStateException("分配机器id失败");
+        }
+        for (long i = 0; i <= MAX_WORKER_ID; i++) {
+            long candidate = (count - 1 + i) & MAX_WORKER_ID;
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(LEASE_KEY_PREFIX + candidate, leaseToken, leaseMillis, TimeUnit.MILLISECONDS);
+            if (BooleanUtil.isTrue(success)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("分配机器id失败，" + (MAX_WORKER_ID + 1) + " 个机器id都已被占用");
+    }
+
+    private void renew() {
+        long start = System.currentTimeMillis();
+        try {
+            Long result = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(LEASE_KEY_PREFIX + workerId),
+                    leaseToken, String.valueOf(leaseMillis));
+            if (result == null || result == 0) {
+                // 租约已过期或被其他节点占用，停止生成 id
+                log.error("雪花算法机器id {} 的租约已失效，停止生成 id", workerId);
+                leaseValidUntil = 0;
+                heartbeat.shutdown();
+                return;
+            }
+            // 从发送续期命令的时间开始计算，保证本地的有效期不晚于 Redis 中的过期时间
+            leaseValidUntil = start + leaseMillis;
+        } catch (Exception e) {
+            // 网络抖动时继续续期，租期内仍然可以生成 id
+            log.warn("雪花算法机器id {} 续期失败", workerId, e);
+        }
+    }
+
+    /**
+     * 停止续期并释放机器id的租约，之后不能再生成 id
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (heartbeat == null) {
+            return;
+        }
+        heartbeat.shutdownNow();
+        leaseValidUntil = 0;
+        List<String> keys = Collections.singletonList(LEASE_KEY_PREFIX + workerId);
+        try {
+            long ahead = aheadMillis(System.currentTimeMillis());
+            if (ahead > 0) {
+                // 已使用的时间戳领先系统时钟，租约保留到时钟追上之后，避免其他节点重复使用
+                stringRedisTemplate.execute(RENEW_SCRIPT, keys, leaseToken, String.valueOf(ahead + 1));
+            } else {
+                stringRedisTemplate.execute(RELEASE_SCRIPT, keys, leaseToken);
+            }
+        } catch (Exception e) {
+            log.warn("释放雪花算法机器id {} 失败，将在租期后自动释放", workerId, e);
+        }
+    }
+
+    @Override
+    public long nextId(String keyPrefix) {
+        return nextId();
+    }
+
+    /**
+     * 生成下一个 id
+     *
+     * @return id
+     */
+    public long nextId() {
+        while (true) {
+            long current = System.currentTimeMillis();
+            if (current >= leaseValidUntil) {
+                throw new IllegalStateException("雪花算法机器id " + workerId + " 的租约已失效");
+            }
+            long id = tryNextId(current);
+            if (id >= 0) {
+                return id;
+            }
+            long ahead = aheadMillis(current);
+            if (ahead > MAX_WAIT_MILLIS) {
+                throw new IllegalStateException("时钟回拨 " + ahead + " 毫秒，拒绝生成 id");
+            }
+            // 等待系统时钟追上
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * 按指定的系统时间生成 id
+     *
+     * @param current 系统时间（毫秒时间戳）
+     * @return id，时间戳领先系统时间超过 {@link #MAX_AHEAD_MILLIS} 时返回 -1
+     */
+    long tryNextId(long current) {
+        long now = current - BEGIN_TIMESTAMP_MILLIS;
+        while (true) {
+            long last = state.get();
+            // 系统时间大于上一次的时间戳时序列号从 0 开始，
+            // 否则（同一毫秒或时钟回拨）在上一次的基础上加 1，序列号溢出时自动进位到时间戳
+            long next = now > (last >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : last + 1;
+            long timestamp = next >>> SEQUENCE_BITS;
+            if (timestamp - now > MAX_AHEAD_MILLIS) {
+                return -1;
+            }
+            if (state.compareAndSet(last, next)) {
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return timestamp << (WORKER_BITS + SEQUENCE_BITS) | workerId << SEQUENCE_BITS | sequence;
+            }
+        }
+    }
+
+    // 已使用的时间戳领先系统时间的毫秒数
+    private long aheadMillis(long current) {
+        return (state.get() >>> SEQUENCE_BITS) - (current - BEGIN_TIMESTAMP_MILLIS);
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 从 id 中解析出生成时间
+     *
+     * @param id
+     * @return 毫秒时间戳
+     */
+    public static long parseTimestamp(long id) {
+        return (id >>> (WORKER_BITS + SEQUENCE_BITS)) + BEGIN_TIMESTAMP_MILLIS;
+    }
+
+    /**
+     * 从 id 中解析出机器id
+     *
+     * @param id
+     * @return 机器id
+     */
+    public static long parseWorkerId(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_WORKER_ID;
+    }
+}
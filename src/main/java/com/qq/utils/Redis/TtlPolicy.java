@@ -0,0 +1,107 @@
+package com.qq.utils.Redis;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存过期时间策略，用于解决缓存雪崩问题
+ * <p>
+ * 大量 key 使用完全相同的过期时间（例如预热任务一次性写入）时，它们会在同一时刻失效，请求全部打到数据库。
+ * 这里在写入缓存时对过期时间做处理：
+ * <br>
+ * 1) 随机抖动：实际过期时间 = ttl * (1 + random * jitterRatio)，只会延长不会缩短；
+ * <br>
+ * 2) 按 key 前缀配置：不同业务数据可以使用不同的过期时间和抖动比例，覆盖调用方传入的值；
+ * <br>
+ * 3) 时间窗口打散：批量加载时使用 {@link #spread}，将过期时间均匀分布在一个窗口内。
+ */
+public class TtlPolicy {
+    /**
+     * 不做任何处理的策略
+     */
+    public static final TtlPolicy NONE = new TtlPolicy(0);
+
+    private final double jitterRatio;
+    private final Map<String, Profile> profiles = new ConcurrentHashMap<>();
+
+    /**
+     * @param jitterRatio 默认的抖动比例，例如 0.1 表示在原过期时间的基础上随机延长 0~10%
+     */
+    public TtlPolicy(double jitterRatio) {
+        if (jitterRatio < 0) {
+            throw new IllegalArgumentException("抖动比例不能小于0");
+        }
+        this.jitterRatio = jitterRatio;
+    }
+
+    /**
+     * 为指定 key 前缀配置过期时间
+     *
+     * @param keyPrefix   redis 中缓存的 key 前缀
+     * @param time        过期时间，小于等于 0 表示沿用调用方传入的值
+     * @param unit        过期时间单位
+     * @param jitterRatio 该前缀的抖动比例
+     * @return this
+     */
+    public TtlPolicy profile(String keyPrefix, long time, TimeUnit unit, double jitterRatio) {
+        if (this == NONE) {
+            throw new UnsupportedOperationException("TtlPolicy.NONE 不能修改");
+        }
+        profiles.put(keyPrefix, new Profile(time > 0 ? unit.toMillis(time) : 0, jitterRatio));
+        return this;
+    }
+
+    /**
+     * 计算实际的过期时间
+     *
+     * @param keyPrefix redis 中缓存的 key 前缀
+     * @param time      调用方传入的过期时间
+     * @param unit      过期时间单位
+     * @return 实际的过期时间（毫秒）
+     */
+    public long ttlMillis(String keyPrefix, long time, TimeUnit unit) {
+        long ttl = unit.toMillis(time);
+        double ratio = jitterRatio;
+        Profile profile = keyPrefix == null ? null : profiles.get(keyPrefix);
+        if (profile != null) {
+            if (profile.ttlMillis > 0) {
+                ttl = profile.ttlMillis;
+            }
+            ratio = profile.jitterRatio;
+        }
+        return jitter(ttl, ratio);
+    }
+
+    /**
+     * 将过期时间打散在 [time, time + window) 内，用于批量加载
+     *
+     * @param time   基础过期时间
+     * @param window 打散窗口
+     * @param unit   时间单位
+     * @return 实际的过期时间（毫秒）
+     */
+    public static long spread(long time, long window, TimeUnit unit) {
+        long windowMillis = unit.toMillis(window);
+        long base = unit.toMillis(time);
+        return windowMillis <= 0 ? base : base + ThreadLocalRandom.current().nextLong(windowMillis);
+    }
+
+    private static long jitter(long ttl, double ratio) {
+        if (ratio <= 0 || ttl <= 0) {
+            return ttl;
+        }
+        return ttl + (long) (ttl * ratio * ThreadLocalRandom.current().nextDouble());
+    }
+
+    private static class Profile {
+        private final long ttlMillis;
+        private final double jitterRatio;
+
+        Profile(long ttlMillis, double jitterRatio) {
+            this.ttlMillis = ttlMillis;
+            this.jitterRatio = jitterRatio;
+        }
+    }
+}
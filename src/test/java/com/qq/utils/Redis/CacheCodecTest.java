@@ -0,0 +1,117 @@
+package com.qq.utils.Redis;
+
+import com.qq.utils.Redis.Impl.BinaryCacheCodec;
+import com.qq.utils.Redis.Impl.JsonCacheCodec;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+public class CacheCodecTest {
+
+    @Data
+    public static class Shop {
+        private Long id;
+        private String name;
+        private int score;
+        private double x;
+        private BigDecimal price;
+        private LocalDateTime createTime;
+        private Type type;
+        private Address address;
+        private List<String> tags;
+    }
+
+    @Data
+    public static class Address {
+        private String city;
+        private Integer zip;
+    }
+
+    public enum Type {
+        FOOD, HOTEL
+    }
+
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    public static class ChainShop extends Shop {
+        private String brand;
+    }
+
+    @Data
+    public static class Holder {
+        private Number amount;
+        private Object payload;
+        private Shop shop;
+    }
+
+    private static Shop newShop() {
+        Shop shop = new Shop();
+        shop.setId(-123456789L);
+        shop.setName("小吃店");
+        shop.setScore(42);
+        shop.setX(120.5);
+        shop.setPrice(new BigDecimal("19.90"));
+        shop.setCreateTime(LocalDateTime.of(2022, 1, 1, 8, 30, 0, 123000000));
+        shop.setType(Type.HOTEL);
+        Address address = new Address();
+        address.setCity("杭州");
+        shop.setAddress(address);
+        shop.setTags(Arrays.asList("a", "b"));
+        return shop;
+    }
+
+    @Test
+    public void binaryRoundTrip() {
+        CacheCodec codec = new BinaryCacheCodec();
+        Shop shop = newShop();
+        Assert.assertEquals(shop, codec.decode(codec.encode(shop), Shop.class));
+        Assert.assertEquals("abc", codec.decode(codec.encode("abc"), String.class));
+        Assert.assertEquals(Long.valueOf(Long.MIN_VALUE), codec.decode(codec.encode(Long.MIN_VALUE), Long.class));
+    }
+
+    @Test
+    public void binaryKeepsConcreteTypes() {
+        CacheCodec codec = new BinaryCacheCodec();
+        ChainShop chainShop = new ChainShop();
+        chainShop.setName("连锁店");
+        chainShop.setBrand("b");
+        Assert.assertEquals(chainShop, codec.decode(codec.encode(chainShop), Shop.class));
+
+        Holder holder = new Holder();
+        holder.setAmount(7);
+        holder.setPayload(Type.FOOD);
+        holder.setShop(chainShop);
+        Holder decoded = codec.decode(codec.encode(holder), Holder.class);
+        Assert.assertEquals(Integer.valueOf(7), decoded.getAmount());
+        Assert.assertEquals(Type.FOOD, decoded.getPayload());
+        Assert.assertEquals(chainShop, decoded.getShop());
+        Assert.assertEquals(Integer.valueOf(7), codec.decode(codec.encode(7), Number.class));
+    }
+
+    @Test
+    public void binaryIsSmallerThanJson() {
+        Shop shop = newShop();
+        Assert.assertTrue(new BinaryCacheCodec().encode(shop).length < new JsonCacheCodec().encode(shop).length);
+    }
+
+    @Test
+    public void logicalRoundTrip() {
+        LocalDateTime expireTime = LocalDateTime.now().withNano(0).plusMinutes(5);
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(expireTime);
+        redisData.setData(newShop());
+        for (CacheCodec codec : Arrays.asList(new JsonCacheCodec(), new BinaryCacheCodec())) {
+            RedisData decoded = codec.decodeLogical(codec.encodeLogical(redisData), Shop.class);
+            Assert.assertEquals(expireTime, decoded.getExpireTime());
+            Assert.assertEquals(newShop().getAddress(), ((Shop) decoded.getData()).getAddress());
+        }
+        BinaryCacheCodec binary = new BinaryCacheCodec();
+        Assert.assertEquals(expireTime, binary.readExpireTime(binary.encodeLogical(redisData)));
+    }
+}
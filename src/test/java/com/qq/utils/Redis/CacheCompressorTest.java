@@ -0,0 +1,61 @@
+package com.qq.utils.Redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class CacheCompressorTest {
+
+    private static byte[] largeJson() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"小吃店\",\"score\":42},");
+        }
+        return sb.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void roundTrip() {
+        CacheCompressor compressor = new CacheCompressor(1024);
+        byte[] json = largeJson();
+        byte[] stored = compressor.compress("cache:shop:1", json);
+        Assert.assertTrue(CacheCompressor.isCompressed(stored));
+        Assert.assertTrue(stored.length * 5 < json.length);
+        Assert.assertArrayEquals(json, compressor.decompress("cache:shop:1", stored));
+
+        CacheCompressor.Stats stats = compressor.getStats("cache:shop:");
+        Assert.assertEquals(1, stats.getCompressed());
+        Assert.assertEquals(1, stats.getDecompressed());
+        Assert.assertEquals(json.length, stats.getRawBytes());
+        Assert.assertEquals(stored.length, stats.getStoredBytes());
+        Assert.assertTrue(stats.getRatio() < 0.2);
+    }
+
+    @Test
+    public void smallAndLegacyValuesPassThrough() {
+        CacheCompressor compressor = new CacheCompressor(1024);
+        byte[] small = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+        Assert.assertSame(small, compressor.compress("cache:shop:1", small));
+        Assert.assertSame(small, compressor.decompress("cache:shop:1", small));
+        Assert.assertNull(compressor.decompress("cache:shop:1", null));
+        byte[] empty = new byte[0];
+        Assert.assertSame(empty, compressor.compress("cache:shop:1", empty));
+        Assert.assertSame(empty, compressor.decompress("cache:shop:1", empty));
+        // 关闭压缩后仍然可以读取压缩过的数据
+        byte[] json = largeJson();
+        byte[] stored = compressor.compress("cache:shop:1", json);
+        Assert.assertArrayEquals(json, CacheCompressor.disabled().decompress("cache:shop:1", stored));
+    }
+
+    @Test
+    public void incompressibleValueStoredAsIs() {
+        CacheCompressor compressor = new CacheCompressor(1024);
+        byte[] random = new byte[8192];
+        ThreadLocalRandom.current().nextBytes(random);
+        random[0] = '"';
+        Assert.assertSame(random, compressor.compress("cache:img:1", random));
+        Assert.assertEquals(1, compressor.getStats("cache:img:").getSkipped());
+    }
+}
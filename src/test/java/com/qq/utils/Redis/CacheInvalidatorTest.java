@@ -0,0 +1,57 @@
+package com.qq.utils.Redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class CacheInvalidatorTest {
+
+    // 只记录删除的 key，不访问 redis
+    private static class RecordingCacheClient extends CacheClient {
+        private final List<String> deleted = new ArrayList<>();
+
+        RecordingCacheClient() {
+            super(new StringRedisTemplate());
+        }
+
+        @Override
+        public synchronized void deleteAll(String keyPrefix, Collection<?> ids) {
+            for (Object id : ids) {
+                deleted.add(keyPrefix + id);
+            }
+        }
+    }
+
+    @Test
+    public void duplicateEventsInWindowAreCoalesced() throws Exception {
+        RecordingCacheClient cacheClient = new RecordingCacheClient();
+        // 窗口足够长，只在 shutdown 时处理
+        CacheInvalidator invalidator = new CacheInvalidator(cacheClient, TimeUnit.HOURS.toMillis(1), 1000);
+        CompletableFuture<Void> applied;
+        try {
+            invalidator.invalidate("shop:", 1);
+            invalidator.invalidate("shop:", 1L);
+            invalidator.invalidate("shop:", "2");
+            applied = invalidator.invalidate(Arrays.asList(new InvalidationEvent("shop:", 2), new InvalidationEvent("user:", 1)));
+
+            Assert.assertEquals(5, invalidator.getReceived());
+            Assert.assertEquals(2, invalidator.getCoalesced());
+            Assert.assertEquals(3, invalidator.getPendingCount());
+            Assert.assertFalse(applied.isDone());
+        } finally {
+            invalidator.shutdown();
+        }
+        applied.get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(3, cacheClient.deleted.size());
+        Assert.assertTrue(cacheClient.deleted.containsAll(Arrays.asList("shop:1", "shop:2", "user:1")));
+        Assert.assertEquals(3, invalidator.getDeleted());
+        cacheClient.shutdown();
+    }
+}
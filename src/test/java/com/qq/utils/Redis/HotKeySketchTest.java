@@ -0,0 +1,56 @@
+package com.qq.utils.Redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HotKeySketchTest {
+
+    @Test
+    public void findsHottestKeys() {
+        HotKeySketch sketch = new HotKeySketch(3, 1024);
+        for (int i = 0; i < 10000; i++) {
+            sketch.add(("cold:" + i).getBytes(StandardCharsets.UTF_8));
+            if (i % 2 == 0) {
+                sketch.add("hot:a".getBytes(StandardCharsets.UTF_8));
+            }
+            if (i % 5 == 0) {
+                sketch.add("hot:b".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        List<HotKeySketch.HotKey> top = sketch.topK();
+        Assert.assertEquals("hot:a", top.get(0).getKey());
+        Assert.assertEquals("hot:b", top.get(1).getKey());
+        Assert.assertTrue(top.get(0).getCount() >= 5000);
+
+        sketch.decay();
+        Assert.assertTrue(sketch.topK().get(0).getCount() >= 2500);
+    }
+
+    @Test
+    public void concurrentAddsKeepCountsOfTrackedKeys() throws InterruptedException {
+        HotKeySketch sketch = new HotKeySketch(2, 4096);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    sketch.add("hot".getBytes(StandardCharsets.UTF_8));
+                    sketch.add(("cold:" + offset + ":" + i).getBytes(StandardCharsets.UTF_8));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        List<HotKeySketch.HotKey> top = sketch.topK();
+        Assert.assertTrue(top.size() <= 2);
+        Assert.assertEquals("hot", top.get(0).getKey());
+        Assert.assertTrue(top.get(0).getCount() >= 80000);
+    }
+}
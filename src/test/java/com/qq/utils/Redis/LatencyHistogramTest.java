@@ -0,0 +1,33 @@
+package com.qq.utils.Redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverValues() {
+        for (long v = 0; v < 1_000_000; v += 7) {
+            int index = LatencyHistogram.indexOf(v);
+            Assert.assertTrue(LatencyHistogram.upperBound(index) >= v);
+            Assert.assertTrue(index == 0 || LatencyHistogram.upperBound(index - 1) < v);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordMicros(i);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(500.5, histogram.getMeanMicros(), 0.001);
+        Assert.assertEquals(1000, histogram.getMaxMicros());
+        long p50 = histogram.getPercentileMicros(50);
+        Assert.assertTrue(p50 >= 500 && p50 <= 500 * 1.125);
+        long p99 = histogram.getPercentileMicros(99);
+        Assert.assertTrue(p99 >= 990 && p99 <= 1000);
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getPercentileMicros(99));
+    }
+}
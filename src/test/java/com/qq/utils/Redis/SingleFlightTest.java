@@ -0,0 +1,70 @@
+package com.qq.utils.Redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class SingleFlightTest {
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws InterruptedException {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = 16;
+        AtomicReferenceArray<String> results = new AtomicReferenceArray<>(threads);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            Thread worker = new Thread(() -> results.set(index, singleFlight.execute("shop:1", () -> {
+                calls.incrementAndGet();
+                await(release);
+                return "shop";
+            })));
+            workers.add(worker);
+            worker.start();
+        }
+        // 所有线程都阻塞后（一个在执行，其余在等待结果）再放行
+        for (Thread worker : workers) {
+            while (worker.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+        }
+        release.countDown();
+        for (Thread worker : workers) {
+            worker.join(5000);
+        }
+        Assert.assertEquals(1, calls.get());
+        for (int i = 0; i < threads; i++) {
+            Assert.assertEquals("shop", results.get(i));
+        }
+        Assert.assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    public void exceptionIsSharedAndKeyIsReleased() {
+        SingleFlight singleFlight = new SingleFlight();
+        try {
+            singleFlight.execute("shop:2", () -> {
+                throw new IllegalStateException("db down");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("db down", e.getMessage());
+        }
+        Assert.assertEquals("ok", singleFlight.execute("shop:2", () -> "ok"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
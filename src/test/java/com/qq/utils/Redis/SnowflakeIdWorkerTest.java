@@ -0,0 +1,71 @@
+package com.qq.utils.Redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+public class SnowflakeIdWorkerTest {
+
+    @Test
+    public void increasingAndParsable() {
+        SnowflakeIdWorker worker = new SnowflakeIdWorker(5);
+        long before = System.currentTimeMillis();
+        long last = 0;
+        for (int i = 0; i < 100000; i++) {
+            long id = worker.nextId();
+            Assert.assertTrue(id > last);
+            last = id;
+        }
+        Assert.assertEquals(5, SnowflakeIdWorker.parseWorkerId(last));
+        Assert.assertTrue(SnowflakeIdWorker.parseTimestamp(last) >= before);
+    }
+
+    @Test
+    public void uniqueAcrossThreads() throws InterruptedException {
+        SnowflakeIdWorker worker = new SnowflakeIdWorker(1023);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        int threads = 8;
+        int perThread = 50000;
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(worker.nextId("order"));
+                }
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+        Assert.assertEquals(threads * perThread, ids.size());
+    }
+
+    @Test
+    public void clockRollbackBorrowsOnlyAFewMillis() {
+        SnowflakeIdWorker worker = new SnowflakeIdWorker(7);
+        long now = System.currentTimeMillis();
+        long first = worker.tryNextId(now);
+        // 小幅回拨：沿用上一次的时间戳继续递增
+        long second = worker.tryNextId(now - 3);
+        Assert.assertTrue(second > first);
+        Assert.assertEquals(now, SnowflakeIdWorker.parseTimestamp(second));
+        // 大幅回拨：时间戳不能领先系统时钟太多，拒绝生成
+        Assert.assertEquals(-1, worker.tryNextId(now - 100));
+
+        // 序列号用完后最多借用几毫秒
+        long last = second;
+        int generated = 0;
+        long id;
+        while ((id = worker.tryNextId(now)) >= 0) {
+            Assert.assertTrue(id > last);
+            last = id;
+            generated++;
+        }
+        Assert.assertTrue(SnowflakeIdWorker.parseTimestamp(last) - now <= 5);
+        Assert.assertTrue(generated < 4096 * 7);
+        // 时钟追上后恢复
+        Assert.assertTrue(worker.tryNextId(now + 10) > last);
+    }
+}
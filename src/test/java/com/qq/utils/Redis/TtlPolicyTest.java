@@ -0,0 +1,39 @@
+package com.qq.utils.Redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class TtlPolicyTest {
+
+    @Test
+    public void jitterOnlyExtendsWithinRatio() {
+        TtlPolicy policy = new TtlPolicy(0.1);
+        Set<Long> distinct = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            long ttl = policy.ttlMillis("shop:", 100, TimeUnit.SECONDS);
+            Assert.assertTrue(ttl >= 100_000 && ttl < 110_000);
+            distinct.add(ttl);
+        }
+        Assert.assertTrue(distinct.size() > 100);
+    }
+
+    @Test
+    public void profileOverridesCaller() {
+        TtlPolicy policy = new TtlPolicy(0.5).profile("user:", 10, TimeUnit.MINUTES, 0);
+        Assert.assertEquals(TimeUnit.MINUTES.toMillis(10), policy.ttlMillis("user:", 1, TimeUnit.SECONDS));
+        Assert.assertEquals(5000, TtlPolicy.NONE.ttlMillis("user:", 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void spreadStaysInWindow() {
+        for (int i = 0; i < 10000; i++) {
+            long ttl = TtlPolicy.spread(30, 10, TimeUnit.MINUTES);
+            Assert.assertTrue(ttl >= TimeUnit.MINUTES.toMillis(30) && ttl < TimeUnit.MINUTES.toMillis(40));
+        }
+        Assert.assertEquals(TimeUnit.MINUTES.toMillis(30), TtlPolicy.spread(30, 0, TimeUnit.MINUTES));
+    }
+}